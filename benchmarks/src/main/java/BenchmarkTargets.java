@@ -0,0 +1,180 @@
+import java.security.Security;
+import java.util.ArrayList;
+
+import colechain.bench.Targets;
+
+/*
+ * 18 October 2026
+ * BenchmarkTargets.java
+ *
+ * Sets up chain state for the benchmarks and calls into it.
+ * Lives in the default package so it can reach the chain's classes.
+ */
+
+public class BenchmarkTargets implements Targets
+{
+	static
+	{
+		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+	}
+
+	private Block block;
+	private ArrayList<Transaction> blockTransactions;
+
+	private Wallet signer;
+	private String payload;
+	private byte[] signature;
+
+	private ArrayList<Transaction> merkleTransactions;
+
+	private Wallet owner;
+
+	@Override
+	public String sha256(String input)
+	{
+		return StringTools.applySHA256(input);
+	}
+
+	@Override
+	public void prepareBlock(int transactions)
+	{
+		blockTransactions = new ArrayList<>();
+		for(int i = 0; i < transactions; ++i)
+		{
+			Transaction t = new Transaction(null, null, ColeChain.COIN, null);
+			t.transactionId = StringTools.applySHA256("transaction" + i);
+			blockTransactions.add(t);
+		}
+
+		block = freshBlock();
+		block.merkleRoot = block.getMerkleTree().getRootHex();
+	}
+
+	private Block freshBlock()
+	{
+		Block fresh = new Block(StringTools.applySHA256("previous"));
+		for(Transaction t : blockTransactions) fresh.addProcessedTransaction(t);
+		return fresh;
+	}
+
+	@Override
+	public String generateHash()
+	{
+		return block.generateHash();
+	}
+
+	@Override
+	public String mineBlock(int difficulty, boolean parallel)
+	{
+		Block fresh = freshBlock();
+
+		if(parallel) fresh.mineBlock(difficulty, ColeChain.miner);
+		else fresh.mineBlock(difficulty);
+
+		return fresh.hash;
+	}
+
+	@Override
+	public void prepareSignature(String payload)
+	{
+		this.payload = payload;
+		signer = new Wallet();
+		signature = StringTools.applyECDSASig(signer.privatekey, payload);
+	}
+
+	@Override
+	public byte[] sign()
+	{
+		return StringTools.applyECDSASig(signer.privatekey, payload);
+	}
+
+	@Override
+	public boolean verify()
+	{
+		return StringTools.verifyECDSASig(signer.publickey, payload, signature);
+	}
+
+	@Override
+	public void prepareMerkle(int transactions)
+	{
+		merkleTransactions = new ArrayList<>(transactions);
+		for(int i = 0; i < transactions; ++i)
+		{
+			Transaction t = new Transaction(null, null, ColeChain.COIN, null);
+			t.transactionId = StringTools.applySHA256("transaction" + i);
+			merkleTransactions.add(t);
+		}
+	}
+
+	@Override
+	public String merkleRoot()
+	{
+		return StringTools.getMerkleRoot(merkleTransactions);
+	}
+
+	@Override
+	public void prepareUTXOs(int outputs, int owners)
+	{
+		ColeChain.UTXOs.clear();
+
+		Wallet[] wallets = new Wallet[owners];
+		for(int w = 0; w < owners; ++w) wallets[w] = new Wallet();
+		owner = wallets[0];
+
+		for(int i = 0; i < outputs; ++i)
+		{
+			TransactionOutput output = new TransactionOutput(wallets[i % owners].publickey, ColeChain.COIN, "parent" + i);
+			ColeChain.UTXOs.put(output.id, output);
+		}
+	}
+
+	@Override
+	public double balance()
+	{
+		return owner.getBalance();
+	}
+
+	@Override
+	public void prepareChain(int blocks, int transactionsPerBlock)
+	{
+		ColeChain.blockchain.clear();
+		ColeChain.UTXOs.clear();
+		ColeChain.checkpoint = null;
+		ColeChain.difficulty = 1;
+		ColeChain.retarget = DifficultyRetarget.fixed();
+
+		Wallet coinbase = new Wallet();
+		Wallet[] wallets = { new Wallet(), new Wallet() };
+
+		Transaction genesis = new Transaction(coinbase.publickey, wallets[0].publickey, 1000000 * ColeChain.COIN, null);
+		genesis.generateSignature(coinbase.privatekey);
+		genesis.transactionId = "0";
+		genesis.outputs.add(new TransactionOutput(genesis.recipient, genesis.value, genesis.transactionId));
+		ColeChain.genesisTransaction = genesis;
+		ColeChain.UTXOs.put(genesis.outputs.get(0).id, genesis.outputs.get(0));
+
+		Block genesisBlock = new Block("0");
+		genesisBlock.addTransaction(genesis);
+		ColeChain.addBlock(genesisBlock);
+
+		for(int b = 0; b < blocks; ++b)
+		{
+			Block next = new Block(ColeChain.blockchain.get(ColeChain.blockchain.size() - 1).hash);
+			for(int t = 0; t < transactionsPerBlock; ++t)
+			{
+				// Bounces coins back and forth so both wallets always have funds.
+				Wallet from = wallets[t % 2];
+				Wallet to = wallets[(t + 1) % 2];
+				from.getBalance();
+				next.addTransaction(from.sendFunds(to.publickey, ColeChain.COIN));
+			}
+			ColeChain.addBlock(next);
+		}
+	}
+
+	@Override
+	public boolean validateChain(boolean parallel)
+	{
+		return ColeChain.isValid(parallel);
+	}
+}
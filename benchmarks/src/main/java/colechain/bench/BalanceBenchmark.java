@@ -0,0 +1,44 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * BalanceBenchmark.java
+ *
+ * Wallet.getBalance with the measured wallet owning a hundredth
+ * of a large set of unspent outputs.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BalanceBenchmark
+{
+	@Param({"1000", "100000"})
+	public int outputs;
+
+	private Targets targets;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+		targets.prepareUTXOs(outputs, 100);
+	}
+
+	@Benchmark
+	public double getBalance()
+	{
+		return targets.balance();
+	}
+}
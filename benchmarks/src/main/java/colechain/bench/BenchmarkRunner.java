@@ -0,0 +1,33 @@
+package colechain.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * 18 October 2026
+ * BenchmarkRunner.java
+ *
+ * Entry point of benchmarks.jar. Takes the usual JMH command line
+ * options, but writes results as JSON to jmh-result.json unless
+ * told otherwise with -rf / -rff, so every run leaves a machine
+ * readable record that can be kept per release.
+ */
+
+public class BenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if(!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+		if(!commandLine.getResult().hasValue()) options.result("jmh-result.json");
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,54 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * HashingBenchmark.java
+ *
+ * StringTools.applySHA256 and Block.generateHash.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HashingBenchmark
+{
+	@Param({"64", "1024"})
+	public int inputLength;
+
+	private Targets targets;
+	private String input;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+		targets.prepareBlock(10);
+
+		StringBuilder text = new StringBuilder(inputLength);
+		while(text.length() < inputLength) text.append('a');
+		input = text.toString();
+	}
+
+	@Benchmark
+	public String applySHA256()
+	{
+		return targets.sha256(input);
+	}
+
+	@Benchmark
+	public String generateHash()
+	{
+		return targets.generateHash();
+	}
+}
@@ -0,0 +1,43 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * MerkleBenchmark.java
+ *
+ * StringTools.getMerkleRoot from 10 to 100k transactions.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MerkleBenchmark
+{
+	@Param({"10", "1000", "10000", "100000"})
+	public int transactions;
+
+	private Targets targets;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+		targets.prepareMerkle(transactions);
+	}
+
+	@Benchmark
+	public String getMerkleRoot()
+	{
+		return targets.merkleRoot();
+	}
+}
@@ -0,0 +1,48 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * MiningBenchmark.java
+ *
+ * Time to mine a fresh block at several difficulties, on one
+ * thread and on the shared multi-threaded Miner. Each invocation
+ * mines a new block, so the nonce search starts from scratch.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MiningBenchmark
+{
+	@Param({"1", "2", "3", "4"})
+	public int difficulty;
+
+	@Param({"false", "true"})
+	public boolean parallel;
+
+	private Targets targets;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+		targets.prepareBlock(10);
+	}
+
+	@Benchmark
+	public String mineBlock()
+	{
+		return targets.mineBlock(difficulty, parallel);
+	}
+}
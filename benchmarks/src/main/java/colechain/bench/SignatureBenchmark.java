@@ -0,0 +1,49 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * SignatureBenchmark.java
+ *
+ * StringTools.applyECDSASig and verifyECDSASig over a payload
+ * the size of a transaction's signed data.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SignatureBenchmark
+{
+	private Targets targets;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+
+		StringBuilder payload = new StringBuilder();
+		while(payload.length() < 200) payload.append("payload");
+		targets.prepareSignature(payload.toString());
+	}
+
+	@Benchmark
+	public byte[] applyECDSASig()
+	{
+		return targets.sign();
+	}
+
+	@Benchmark
+	public boolean verifyECDSASig()
+	{
+		return targets.verify();
+	}
+}
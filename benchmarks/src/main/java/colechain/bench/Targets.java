@@ -0,0 +1,65 @@
+package colechain.bench;
+
+/*
+ * 18 October 2026
+ * Targets.java
+ *
+ * The chain's classes live in the default package, which JMH
+ * benchmarks can't be in and named packages can't import. The
+ * benchmarks call the chain through this interface instead, and
+ * the default package BenchmarkTargets implements it. The JIT
+ * inlines through the single implementation, so it costs nothing
+ * measurable.
+ */
+
+public interface Targets
+{
+	// SHA256 of a string, as StringTools.applySHA256.
+	String sha256(String input);
+
+	// Creates a block with the given number of transactions to hash and mine.
+	void prepareBlock(int transactions);
+
+	String generateHash();
+
+	// Mines a fresh copy of the prepared block, on one thread or on the shared Miner.
+	String mineBlock(int difficulty, boolean parallel);
+
+	// Creates a key pair and a payload to sign.
+	void prepareSignature(String payload);
+
+	byte[] sign();
+
+	boolean verify();
+
+	// Creates the given number of transaction ids.
+	void prepareMerkle(int transactions);
+
+	String merkleRoot();
+
+	// Fills ColeChain.UTXOs with outputs spread over owners, one of them the measured wallet.
+	void prepareUTXOs(int outputs, int owners);
+
+	double balance();
+
+	// Builds a chain of blocks at difficulty 1, each with transactions between two wallets.
+	void prepareChain(int blocks, int transactionsPerBlock);
+
+	boolean validateChain(boolean parallel);
+
+	/**
+	 *
+	 * @return : The default package implementation.
+	 */
+	static Targets load()
+	{
+		try
+		{
+			return (Targets) Class.forName("BenchmarkTargets").getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("BenchmarkTargets is missing from the classpath", e);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package colechain.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * 18 October 2026
+ * ValidationBenchmark.java
+ *
+ * ColeChain.isValid, serial and parallel, over synthetic chains.
+ * The chain lives in ColeChain's static state, so it is shared by
+ * the whole benchmark.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ValidationBenchmark
+{
+	@Param({"10", "100"})
+	public int blocks;
+
+	@Param({"10"})
+	public int transactionsPerBlock;
+
+	@Param({"false", "true"})
+	public boolean parallel;
+
+	private Targets targets;
+
+	@Setup
+	public void setUp()
+	{
+		targets = Targets.load();
+		targets.prepareChain(blocks, transactionsPerBlock);
+	}
+
+	@Benchmark
+	public boolean isValid()
+	{
+		return targets.validateChain(parallel);
+	}
+}
@@ -0,0 +1,130 @@
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.WeakHashMap;
+
+/*
+ * 18 October 2026
+ * Address.java
+ *
+ * A wallet address: the encoded form of a public key, worked
+ * out once and kept. Saves running key.getEncoded() and Base64
+ * every time a key goes into a hash, a signature payload or an
+ * index.
+ */
+
+public final class Address
+{
+	// Length of the short hash, in bytes.
+	public static final int SHORT_HASH_LENGTH = 20;
+
+	// Number of independently locked parts of the cache. A power of two.
+	private static final int STRIPES = 32;
+
+	/*
+	 * Addresses already worked out, dropped along with their key.
+	 * Split by key hash into stripes with a lock each, so threads
+	 * hashing and verifying in parallel rarely wait on one another.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final WeakHashMap<PublicKey, Address>[] CACHE = new WeakHashMap[STRIPES];
+
+	static
+	{
+		for(int i = 0; i < STRIPES; ++i) CACHE[i] = new WeakHashMap<>();
+	}
+
+	// The key's X.509 encoding.
+	private final byte[] encoded;
+
+	// The encoding in Base64, as StringTools.getStringFromKey always returned.
+	private final String text;
+
+	// First SHORT_HASH_LENGTH bytes of SHA256(encoded).
+	private final byte[] shortHash;
+
+	private final int hashCode;
+
+	private Address(PublicKey key)
+	{
+		encoded = key.getEncoded();
+		text = Base64.getEncoder().encodeToString(encoded);
+		hashCode = Arrays.hashCode(encoded);
+		shortHash = Arrays.copyOf(CryptoService.sha256(encoded), SHORT_HASH_LENGTH);
+	}
+
+	/**
+	 *
+	 * @param key : A public key.
+	 * @return : The key's address, worked out on first use.
+	 */
+	public static Address of(PublicKey key)
+	{
+		int hash = key.hashCode();
+		WeakHashMap<PublicKey, Address> stripe = CACHE[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+
+		synchronized(stripe)
+		{
+			Address address = stripe.get(key);
+			if(address != null) return address;
+		}
+
+		// Worked out outside the lock. If another thread got there first, its address is kept.
+		Address address = new Address(key);
+
+		synchronized(stripe)
+		{
+			Address existing = stripe.putIfAbsent(key, address);
+			return existing != null ? existing : address;
+		}
+	}
+
+	/**
+	 *
+	 * @return : Copy of the key's encoded bytes.
+	 */
+	public byte[] getEncoded()
+	{
+		return encoded.clone();
+	}
+
+	/**
+	 *
+	 * @return : Copy of the short hash of the key.
+	 */
+	public byte[] getShortHash()
+	{
+		return shortHash.clone();
+	}
+
+	/**
+	 *
+	 * @return : The short hash as hex, handy for display.
+	 */
+	public String getShortHashHex()
+	{
+		return StringTools.toHex(shortHash);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof Address && Arrays.equals(encoded, ((Address) other).encoded);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+
+	/**
+	 *
+	 * @return : The Base64 encoding of the key.
+	 */
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+}
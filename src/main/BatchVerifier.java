@@ -0,0 +1,107 @@
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * 18 October 2026
+ * BatchVerifier.java
+ *
+ * Checks the signatures on a whole list of transactions at once,
+ * like a block being imported or a batch out of the mempool.
+ *
+ * Transactions are grouped by sender so each key is parsed and
+ * set up once per group rather than once per signature, then the
+ * groups are cut into chunks and checked in parallel.
+ */
+
+public class BatchVerifier
+{
+	// Most signatures checked by one task.
+	private static final int CHUNK_SIZE = 64;
+
+	// Below this many transactions it isn't worth going parallel.
+	private static final int PARALLEL_THRESHOLD = 2 * CHUNK_SIZE;
+
+	/**
+	 *
+	 * @param transactions : Signed transactions.
+	 * @return : Bit i is set when the signature on transactions.get(i) is valid.
+	 *
+	 * A missing signature or sender, or a key that can't be used,
+	 * just leaves the bit clear.
+	 */
+	public static BitSet verify(List<? extends Transaction> transactions)
+	{
+		LinkedHashMap<Address, ArrayList<Integer>> bySender = new LinkedHashMap<>();
+
+		for(int i = 0; i < transactions.size(); ++i)
+		{
+			Transaction transaction = transactions.get(i);
+			if(transaction == null || transaction.sender == null || transaction.signature == null) continue;
+
+			bySender.computeIfAbsent(Address.of(transaction.sender), a -> new ArrayList<>()).add(i);
+		}
+
+		// Splits each sender's group so one busy sender doesn't hold up the rest.
+		ArrayList<List<Integer>> chunks = new ArrayList<>();
+		for(ArrayList<Integer> group : bySender.values())
+		{
+			for(int start = 0; start < group.size(); start += CHUNK_SIZE)
+			{
+				chunks.add(group.subList(start, Math.min(start + CHUNK_SIZE, group.size())));
+			}
+		}
+
+		boolean[] valid = new boolean[transactions.size()];
+
+		Stream<List<Integer>> work = transactions.size() >= PARALLEL_THRESHOLD ? chunks.parallelStream() : chunks.stream();
+		work.forEach(chunk -> verifyChunk(transactions, chunk, valid));
+
+		BitSet results = new BitSet(transactions.size());
+		for(int i = 0; i < valid.length; ++i)
+		{
+			if(valid[i]) results.set(i);
+		}
+
+		return results;
+	}
+
+	/**
+	 *
+	 * @param transactions : Signed transactions.
+	 * @return : Whether every signature in the list is valid.
+	 */
+	public static boolean verifyAll(List<? extends Transaction> transactions)
+	{
+		return verify(transactions).cardinality() == transactions.size();
+	}
+
+	// Checks one chunk, all signed by the same sender, on the calling thread.
+	private static void verifyChunk(List<? extends Transaction> transactions, List<Integer> chunk, boolean[] valid)
+	{
+		Transaction first = transactions.get(chunk.get(0));
+		Signature verifier;
+
+		try
+		{
+			verifier = CryptoService.verifier(first.sender);
+		}
+		catch(CryptoService.CryptoException e)
+		{
+			// Nothing signed by an unusable key can be valid.
+			return;
+		}
+
+		for(int index : chunk)
+		{
+			Transaction transaction = transactions.get(index);
+			valid[index] = CryptoService.verify(verifier, transaction.signingPayload(), transaction.signature);
+
+			// A malformed signature can leave the engine mid-update.
+			if(!valid[index]) verifier = CryptoService.verifier(first.sender);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Objects;
 
 /*
  * Author: Cole Polyak
@@ -16,17 +17,38 @@ public class Block
 	// Hash of previous block
 	public String previousHash;
 	
-	// Functionality forthcoming. Currently a WIP.
+	// Root of the merkle tree over the block's transactions. Set when mined.
 	public String merkleRoot;
 	
 	// Transactions that are being included in the block.
 	public ArrayList<Transaction> transactions = new ArrayList<Transaction>();
 	
+	// Merkle tree over the transaction ids, grown as transactions are added.
+	private MerkleTree merkleTree = new MerkleTree();
+	
+	// The ids merkleTree was built over, in order, to tell when transactions no longer match them.
+	private ArrayList<String> merkleIds = new ArrayList<>();
+	
 	// Milliseconds since 1/1/1970
 	private long timeStamp;
 	
 	// Added into mining calculations.
 	private int magicNumber;
+	
+	// Commitment over the unspent outputs once this block is applied. Not part of the hash.
+	private String UTXOCommitment;
+	
+	// Proof of work the block had to show. Worked out from the blocks before it, not part of the hash.
+	private Target target;
+	
+	private static final Metrics.Counter HASHES =
+		Metrics.counter("colechain_hashes_total", "Block header hashes tried while mining.");
+	
+	private static final Metrics.Counter MINED =
+		Metrics.counter("colechain_blocks_mined_total", "Blocks this node has mined.");
+	
+	private static final Metrics.Histogram MINE_TIME =
+		Metrics.histogram("colechain_block_mine_seconds", "Time to find a block's magic number.", Metrics.LATENCY_BUCKETS);
 
 	/**
 	 * 
@@ -38,6 +60,60 @@ public class Block
 		timeStamp = new Date().getTime();
 		hash = generateHash();
 	}
+	
+	/**
+	 * 
+	 * Rebuilds an already mined block, e.g. one read back from disk.
+	 */
+	Block(String hash, String previousHash, String merkleRoot, long timeStamp, int magicNumber, ArrayList<Transaction> transactions)
+	{
+		this.hash = hash;
+		this.previousHash = previousHash;
+		this.merkleRoot = merkleRoot;
+		this.timeStamp = timeStamp;
+		this.magicNumber = magicNumber;
+		this.transactions = transactions;
+	}
+	
+	public long getTimeStamp()
+	{
+		return timeStamp;
+	}
+	
+	public int getMagicNumber()
+	{
+		return magicNumber;
+	}
+	
+	/**
+	 * 
+	 * @return : Commitment over the unspent outputs as of this block,
+	 * or null until the block has been validated or loaded.
+	 */
+	public String getUTXOCommitment()
+	{
+		return UTXOCommitment;
+	}
+	
+	void setUTXOCommitment(String UTXOCommitment)
+	{
+		this.UTXOCommitment = UTXOCommitment;
+	}
+	
+	/**
+	 * 
+	 * @return : The target this block's hash had to meet, or null
+	 * until the block has been mined, validated or loaded.
+	 */
+	public Target getTarget()
+	{
+		return target;
+	}
+	
+	void setTarget(Target target)
+	{
+		this.target = target;
+	}
 
 	/**
 	 * 
@@ -47,6 +123,18 @@ public class Block
 	 * into SHA256 Hash.
 	 */
 	public String generateHash()
+	{
+		return generateHash(magicNumber);
+	}
+	
+	/**
+	 * 
+	 * @param magicNumber : The magic number to try.
+	 * @return : The hash this block would have with the given magic number.
+	 * 
+	 * Lets mining workers try magic numbers without touching the block.
+	 */
+	public String generateHash(int magicNumber)
 	{
 		String calculatedHash = StringTools.applySHA256(
 			previousHash +  
@@ -57,13 +145,83 @@ public class Block
 		return calculatedHash;
 	}
 	
+	/**
+	 * 
+	 * @return : The merkle tree over this block's transactions.
+	 * 
+	 * Rebuilt from scratch only if the transaction ids no longer
+	 * match the ones it was built over, e.g. for blocks read back
+	 * from disk or a transaction swapped in the list. Comparing ids
+	 * is much cheaper than hashing them again.
+	 */
+	public MerkleTree getMerkleTree()
+	{
+		if(!matchesMerkleIds())
+		{
+			ArrayList<String> ids = new ArrayList<>(transactions.size());
+			for(Transaction t : transactions) ids.add(t.transactionId);
+			merkleTree = MerkleTree.build(ids);
+			merkleIds = ids;
+		}
+		
+		return merkleTree;
+	}
+	
+	// Whether the transactions, in order, still have the ids merkleTree was built over.
+	private boolean matchesMerkleIds()
+	{
+		if(merkleIds.size() != transactions.size()) return false;
+		
+		for(int i = 0; i < transactions.size(); ++i)
+		{
+			if(!Objects.equals(merkleIds.get(i), transactions.get(i).transactionId)) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @return : A byte level hasher over this block's current header.
+	 * 
+	 * The merkle root must be set before calling this.
+	 */
+	HeaderHasher headerHasher()
+	{
+		return new HeaderHasher(previousHash, timeStamp, merkleRoot);
+	}
+	
+	/**
+	 * 
+	 * @param magicNumber : The winning magic number.
+	 * @param hash : The hash it produced.
+	 * 
+	 * Records the result found by a mining worker.
+	 */
+	void setMined(int magicNumber, String hash)
+	{
+		this.magicNumber = magicNumber;
+		this.hash = hash;
+	}
+	
 	/**
 	 * 
 	 * @param difficulty : How difficult the hash is to solve.
 	 * 
-	 * Allows miners to build out the chain. 
+	 * Mines against the target of that many leading hex zeroes.
 	 */
 	public void mineBlock(int difficulty)
+	{
+		mineBlock(Target.ofLeadingZeroes(difficulty));
+	}
+	
+	/**
+	 * 
+	 * @param target : Largest hash the block may have.
+	 * 
+	 * Allows miners to build out the chain. 
+	 */
+	public void mineBlock(Target target)
 	{
 		/*
 		 * So, we have our blockchain which is essentially a 
@@ -78,22 +236,73 @@ public class Block
 		 * contains a data block.
 		 * 
 		 * tl;dr : They make the chain scalable. 
-		 * 
-		 * **Functionalty forthcoming. Currently a WIP**
 		 */
-		merkleRoot = StringTools.getMerkleRoot(transactions);
+		merkleRoot = getMerkleTree().getRootHex();
+		long start = System.nanoTime();
 		
-		// Determines how many zeroes the target hash must have.
-		String target = StringTools.getDifficultyString(difficulty);
+		// Hashes the header as bytes, only the magic number changes per attempt.
+		HeaderHasher hasher = headerHasher();
+		byte[] digest = hasher.hash(magicNumber);
+		long attempts = 1;
+		this.target = target;
 		
 		// Iterates till a valid hash is discovered.
-		while(!hash.substring(0, difficulty).equals(target))
+		while(!target.isMetBy(digest))
 		{
 			magicNumber++;
-			hash = generateHash();
+			digest = hasher.hash(magicNumber);
+			attempts++;
 		}
 		
-		System.out.println("Block mined: " + hash);
+		hash = StringTools.toHex(digest);
+		
+		HASHES.add(attempts);
+		MINED.inc();
+		MINE_TIME.observeSince(start);
+		Log.info("block.mined", "hash", hash, "hashes", attempts);
+	}
+	
+	/**
+	 * 
+	 * @param difficulty : How difficult the hash is to solve.
+	 * @param miner : The multi-threaded miner to search with.
+	 * 
+	 * @return : Whether the block was mined, see mineBlock(target, miner).
+	 * 
+	 * Same as mineBlock(difficulty) but spreads the search over
+	 * the miner's worker threads.
+	 */
+	public boolean mineBlock(int difficulty, Miner miner)
+	{
+		return mineBlock(Target.ofLeadingZeroes(difficulty), miner);
+	}
+	
+	/**
+	 * 
+	 * @param target : Largest hash the block may have.
+	 * @param miner : The multi-threaded miner to search with.
+	 * @return : Whether the block was mined, false if the calling thread
+	 * was interrupted first. Its interrupt flag is left set.
+	 * 
+	 * Same as mineBlock(target) but spreads the search over
+	 * the miner's worker threads.
+	 */
+	public boolean mineBlock(Target target, Miner miner)
+	{
+		merkleRoot = getMerkleTree().getRootHex();
+		this.target = target;
+		long start = System.nanoTime();
+		
+		if(!miner.mine(this, target))
+		{
+			if(Thread.currentThread().isInterrupted()) return false;
+			throw new IllegalStateException("No valid magic number found for block.");
+		}
+		
+		MINED.inc();
+		MINE_TIME.observeSince(start);
+		Log.info("block.mined", "hash", hash, "hashesPerSecond", (long) miner.getTotalHashRate());
+		return true;
 	}
 	
 	/**
@@ -114,13 +323,27 @@ public class Block
 			// Ensures the transaction works
 			if(transaction.processTransaction() != true)
 			{
-				System.out.println("Transaction failed to process. Discarded");
+				Log.info("block.transaction_discarded", "block", hash);
 				return false;
 			}
 		}
 		
-		transactions.add(transaction);
-		System.out.println("Transaction successfully added to block");
+		addProcessedTransaction(transaction);
+		Log.debug("block.transaction_added", "block", hash, "transaction", transaction.transactionId);
 		return true;
 	}
+	
+	/**
+	 * 
+	 * @param transaction : A transaction whose id and outputs are already generated.
+	 * 
+	 * Adds a transaction without processing it against the chain,
+	 * for block assembly that tracks unspent outputs itself.
+	 */
+	void addProcessedTransaction(Transaction transaction)
+	{
+		transactions.add(transaction);
+		merkleTree.append(transaction.transactionId);
+		merkleIds.add(transaction.transactionId);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,362 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.interfaces.ECPublicKey;
+import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
+
+/*
+ * 18 October 2026
+ * BlockCodec.java
+ *
+ * Binary format for blocks and transactions, used on disk and
+ * on the wire. Every block starts with a version byte. Hashes
+ * are stored as 32 raw bytes, keys as compressed curve points
+ * and numbers at fixed width, all big-endian. Values are 8 byte
+ * counts of base units.
+ *
+ * Block:
+ *   version, hash, previousHash, merkleRoot, timeStamp (8),
+ *   magicNumber (4), transaction count (4), transactions
+ *
+ * Transaction:
+ *   transactionId, sender, recipient, value, signature,
+ *   input count (4, -1 when there are none), input ids,
+ *   output count (4), outputs
+ *
+ * Output:
+ *   id, owner, value. The parent id is always the enclosing
+ *   transaction's id, so it isn't stored.
+ */
+
+public class BlockCodec
+{
+	// Current format version.
+	public static final byte VERSION = 2;
+
+	// How a hash field is stored.
+	private static final byte NULL = 0;
+	private static final byte HASH = 1;
+	private static final byte TEXT = 2;
+
+	// How an output's owner is stored.
+	private static final byte OWNER_RECIPIENT = 0;
+	private static final byte OWNER_SENDER = 1;
+	private static final byte OWNER_KEY = 2;
+
+	// Fewest bytes each record can take, to check counts against what's left to read.
+	private static final int MIN_TRANSACTION = 21;
+	private static final int MIN_INPUT = 1;
+	private static final int MIN_OUTPUT = 10;
+
+	// Curve every wallet key is generated on.
+	private static final ECNamedCurveParameterSpec CURVE = ECNamedCurveTable.getParameterSpec(Wallet.CURVE);
+
+	/**
+	 *
+	 * @param block : The block to encode.
+	 * @return : The block in binary form.
+	 */
+	public static byte[] encode(Block block)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + block.transactions.size() * 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try
+		{
+			out.writeByte(VERSION);
+			writeHash(out, block.hash);
+			writeHash(out, block.previousHash);
+			writeHash(out, block.merkleRoot);
+			out.writeLong(block.getTimeStamp());
+			out.writeInt(block.getMagicNumber());
+
+			out.writeInt(block.transactions.size());
+			for(Transaction t : block.transactions) writeTransaction(out, t);
+
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			// Only ever writes to memory.
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 *
+	 * @param transaction : The transaction to encode.
+	 * @return : The transaction in binary form, prefixed by the version.
+	 */
+	public static byte[] encode(Transaction transaction)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try
+		{
+			out.writeByte(VERSION);
+			writeTransaction(out, transaction);
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 *
+	 * @param in : Buffer positioned at an encoded block. Advanced past it.
+	 * @return : The decoded block.
+	 *
+	 * Reads straight out of the buffer without copying it first, so a
+	 * memory mapped file can be decoded in place. Inputs come back with
+	 * only their output id, linking them to the outputs they spend is
+	 * left to whoever replays the chain.
+	 */
+	public static Block decodeBlock(ByteBuffer in)
+	{
+		checkVersion(in);
+
+		String hash = readHash(in);
+		String previousHash = readHash(in);
+		String merkleRoot = readHash(in);
+		long timeStamp = in.getLong();
+		int magicNumber = in.getInt();
+
+		int count = readCount(in, MIN_TRANSACTION);
+		ArrayList<Transaction> transactions = new ArrayList<>(count);
+		for(int t = 0; t < count; ++t) transactions.add(readTransaction(in));
+
+		return new Block(hash, previousHash, merkleRoot, timeStamp, magicNumber, transactions);
+	}
+
+	/**
+	 *
+	 * @param in : Buffer positioned at an encoded transaction. Advanced past it.
+	 * @return : The decoded transaction.
+	 */
+	public static Transaction decodeTransaction(ByteBuffer in)
+	{
+		checkVersion(in);
+		return readTransaction(in);
+	}
+
+	/**
+	 *
+	 * @param in : Buffer positioned at an encoded block. Left untouched.
+	 * @return : The block's hash, without decoding anything else.
+	 */
+	public static String peekHash(ByteBuffer in)
+	{
+		ByteBuffer view = in.duplicate();
+		checkVersion(view);
+		return readHash(view);
+	}
+
+	private static void checkVersion(ByteBuffer in)
+	{
+		byte version = in.get();
+		if(version != VERSION)
+		{
+			throw new IllegalArgumentException("Unsupported block format version " + version);
+		}
+	}
+
+	private static void writeTransaction(DataOutputStream out, Transaction t) throws IOException
+	{
+		writeHash(out, t.transactionId);
+		writeKey(out, t.sender);
+		writeKey(out, t.recipient);
+		out.writeLong(t.value);
+
+		out.writeShort(t.signature == null ? -1 : t.signature.length);
+		if(t.signature != null) out.write(t.signature);
+
+		// Genesis transactions have no inputs at all.
+		out.writeInt(t.inputs == null ? -1 : t.inputs.size());
+		if(t.inputs != null)
+		{
+			for(TransactionInput i : t.inputs) writeHash(out, i.transactionOutputId);
+		}
+
+		out.writeInt(t.outputs.size());
+		for(TransactionOutput o : t.outputs)
+		{
+			writeHash(out, o.id);
+
+			// Outputs almost always go to the recipient or back to the sender.
+			if(o.recipient.equals(t.recipient))
+			{
+				out.writeByte(OWNER_RECIPIENT);
+			}
+			else if(o.recipient.equals(t.sender))
+			{
+				out.writeByte(OWNER_SENDER);
+			}
+			else
+			{
+				out.writeByte(OWNER_KEY);
+				writeKey(out, o.recipient);
+			}
+
+			out.writeLong(o.value);
+		}
+	}
+
+	private static Transaction readTransaction(ByteBuffer in)
+	{
+		String transactionId = readHash(in);
+		PublicKey sender = readKey(in);
+		PublicKey recipient = readKey(in);
+		long value = in.getLong();
+
+		byte[] signature = null;
+		short signatureLength = in.getShort();
+		if(signatureLength < -1 || signatureLength > in.remaining())
+		{
+			throw new IllegalArgumentException("Signature length " + signatureLength + " is out of range.");
+		}
+		if(signatureLength >= 0)
+		{
+			signature = new byte[signatureLength];
+			in.get(signature);
+		}
+
+		// -1 marks a transaction with no inputs at all.
+		ArrayList<TransactionInput> inputs = null;
+		int inputCount = in.getInt(in.position()) == -1 ? in.getInt() : readCount(in, MIN_INPUT);
+		if(inputCount >= 0)
+		{
+			inputs = new ArrayList<>(inputCount);
+			for(int i = 0; i < inputCount; ++i) inputs.add(new TransactionInput(readHash(in)));
+		}
+
+		Transaction transaction = new Transaction(sender, recipient, value, inputs);
+		transaction.transactionId = transactionId;
+		transaction.signature = signature;
+
+		int outputCount = readCount(in, MIN_OUTPUT);
+		for(int o = 0; o < outputCount; ++o)
+		{
+			String id = readHash(in);
+
+			PublicKey owner;
+			byte ownerType = in.get();
+			if(ownerType == OWNER_RECIPIENT) owner = recipient;
+			else if(ownerType == OWNER_SENDER) owner = sender;
+			else if(ownerType == OWNER_KEY) owner = readKey(in);
+			else throw new IllegalArgumentException("Unknown owner type " + ownerType);
+
+			transaction.outputs.add(new TransactionOutput(id, owner, in.getLong(), transactionId));
+		}
+
+		return transaction;
+	}
+
+	/*
+	 * SHA256 hex strings go in as their 32 raw bytes. Anything
+	 * else, like the "0" used for the genesis block, is kept as
+	 * short UTF-8 text.
+	 */
+	static void writeHash(DataOutputStream out, String hash) throws IOException
+	{
+		if(hash == null)
+		{
+			out.writeByte(NULL);
+		}
+		else if(StringTools.isHash(hash))
+		{
+			out.writeByte(HASH);
+			for(int i = 0; i < 64; i += 2)
+			{
+				out.writeByte((Character.digit(hash.charAt(i), 16) << 4) | Character.digit(hash.charAt(i + 1), 16));
+			}
+		}
+		else
+		{
+			byte[] text = hash.getBytes(StandardCharsets.UTF_8);
+			out.writeByte(TEXT);
+			out.writeShort(text.length);
+			out.write(text);
+		}
+	}
+
+	static String readHash(ByteBuffer in)
+	{
+		byte type = in.get();
+
+		if(type == NULL) return null;
+
+		if(type == HASH)
+		{
+			char[] hex = new char[64];
+			for(int i = 0; i < 32; ++i)
+			{
+				int b = in.get() & 0xff;
+				hex[i * 2] = Character.forDigit(b >>> 4, 16);
+				hex[i * 2 + 1] = Character.forDigit(b & 0xf, 16);
+			}
+			return new String(hex);
+		}
+
+		if(type != TEXT) throw new IllegalArgumentException("Unknown hash type " + type);
+
+		int length = in.getShort();
+		if(length < 0 || length > in.remaining()) throw new IllegalArgumentException("Hash text length " + length + " is out of range.");
+
+		byte[] text = new byte[length];
+		in.get(text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Reads a count of records, refusing one that the rest of the
+	 * buffer couldn't hold even if every record were as small as
+	 * possible. Bad data can then never make a list allocate more
+	 * than the data itself.
+	 */
+	private static int readCount(ByteBuffer in, int minimumSize)
+	{
+		int count = in.getInt();
+		if(count < 0 || count > in.remaining() / minimumSize)
+		{
+			throw new IllegalArgumentException("Count " + count + " is more than the data holds.");
+		}
+		return count;
+	}
+
+	static void writeKey(DataOutputStream out, PublicKey key) throws IOException
+	{
+		byte[] point = ((ECPublicKey) key).getQ().getEncoded(true);
+		out.writeByte(point.length);
+		out.write(point);
+	}
+
+	static PublicKey readKey(ByteBuffer in)
+	{
+		byte[] point = new byte[in.get() & 0xff];
+		in.get(point);
+
+		try
+		{
+			return CryptoService.keyFactory().generatePublic(new ECPublicKeySpec(CURVE.getCurve().decodePoint(point), CURVE));
+		}
+		catch(Exception e)
+		{
+			throw new IllegalArgumentException("Invalid public key in encoded data", e);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 18 October 2026
+ * BlockPipeline.java
+ *
+ * Produces blocks from the mempool in stages:
+ *
+ *   select -> validate -> build merkle root -> mine -> commit
+ *
+ * The first three stages run on an assembler thread and the last
+ * two on a miner thread, joined by a one slot queue. While one
+ * block is being mined the assembler is already preparing the next
+ * one on top of it, against a view of the unspent outputs that
+ * includes the effects of every block still in flight. A block's
+ * transactions are only applied to ColeChain.UTXOs once it has been
+ * mined and committed.
+ *
+ * The assembler reads the chain through ColeChain.state snapshots
+ * and never takes the write lock, so it carries on while the miner
+ * commits. Only the commit itself is a write.
+ *
+ * Each template remembers the block it was built on. If that block
+ * isn't the tip when the template reaches the miner (it failed
+ * validation, or the chain moved some other way), the template is
+ * stale: it is thrown away and its transactions go back to the
+ * mempool.
+ */
+
+public class BlockPipeline
+{
+	// A block ready to be mined, and the block it must follow.
+	private static class Template
+	{
+		final Block parent;
+		final Block block;
+
+		Template(Block parent, Block block)
+		{
+			this.parent = parent;
+			this.block = block;
+		}
+	}
+
+	private final Mempool mempool;
+
+	// Most transactions put into one block.
+	private final int maxTransactions;
+
+	// How long the assembler waits for transactions before building a smaller block.
+	private final long batchWaitMillis;
+
+	// Assembled blocks waiting for the miner. One slot, so assembly runs one block ahead.
+	private final ArrayBlockingQueue<Template> ready = new ArrayBlockingQueue<>(1);
+
+	// Templates assembled but not yet committed or discarded, oldest first.
+	private final CopyOnWriteArrayList<Template> inFlight = new CopyOnWriteArrayList<>();
+
+	// Set by the miner when the assembler must start again from the chain tip.
+	private volatile boolean rebase = true;
+
+	private volatile boolean running;
+	private Thread assembler;
+	private Thread producer;
+
+	/**
+	 *
+	 * @param mempool : Where transactions are taken from.
+	 * @param maxTransactions : Most transactions per block.
+	 * @param batchWaitMillis : How long to wait for a full batch.
+	 */
+	public BlockPipeline(Mempool mempool, int maxTransactions, long batchWaitMillis)
+	{
+		this.mempool = mempool;
+		this.maxTransactions = maxTransactions;
+		this.batchWaitMillis = batchWaitMillis;
+	}
+
+	// Starts the assembler and miner threads.
+	public synchronized void start()
+	{
+		if(running) return;
+		running = true;
+
+		assembler = new Thread(this::assemble, "block-assembler");
+		producer = new Thread(this::produce, "block-producer");
+		assembler.setDaemon(true);
+		producer.setDaemon(true);
+		assembler.start();
+		producer.start();
+	}
+
+	// Stops both threads. A block being mined is abandoned.
+	public synchronized void stop()
+	{
+		running = false;
+		if(assembler != null) assembler.interrupt();
+		if(producer != null) producer.interrupt();
+	}
+
+	/*
+	 * Assembler thread: selects a batch, validates it against the
+	 * unspent outputs as they'll be once every in flight block is
+	 * committed, builds the block and its merkle root, then hands it
+	 * to the miner.
+	 */
+	private void assemble()
+	{
+		Block parent = null;
+
+		try
+		{
+			while(running)
+			{
+				if(rebase)
+				{
+					parent = ColeChain.state.current().getTip();
+
+					// Nothing to build on until there's a genesis block, e.g. one taken from a peer.
+					if(parent == null)
+					{
+						TimeUnit.MILLISECONDS.sleep(batchWaitMillis);
+						continue;
+					}
+
+					rebase = false;
+				}
+
+				ArrayList<Transaction> batch = selectBatch();
+				Block block = new Block(parent.hash);
+
+				/*
+				 * Templates leave inFlight only after the snapshot with their
+				 * block is published, so copying the list before reading the
+				 * snapshot never misses a block. One in both is harmless.
+				 */
+				ArrayList<Template> pending = new ArrayList<>(inFlight);
+				UTXOView view = new UTXOView(ColeChain.state.current(), pending);
+				for(Transaction transaction : batch)
+				{
+					if(view.validate(transaction))
+					{
+						block.addProcessedTransaction(transaction);
+					}
+				}
+
+				block.merkleRoot = block.getMerkleTree().getRootHex();
+
+				Template template = new Template(parent, block);
+				inFlight.add(template);
+				ready.put(template);
+				parent = block;
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Waits up to batchWaitMillis for a full batch, then takes what there is.
+	private ArrayList<Transaction> selectBatch() throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + batchWaitMillis;
+
+		while(mempool.size() < maxTransactions && System.currentTimeMillis() < deadline)
+		{
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+
+		return mempool.take(maxTransactions);
+	}
+
+	/*
+	 * Miner thread: mines each template on top of the current tip
+	 * and submits it, which applies its transactions to the chain's
+	 * unspent outputs. The tip is checked again under the write lock,
+	 * since another writer may have moved it during mining.
+	 */
+	private void produce()
+	{
+		try
+		{
+			while(running)
+			{
+				Template template = ready.take();
+				ChainState.Snapshot chain = ColeChain.state.current();
+				Block tip = chain.getTip();
+
+				if(template.parent != tip)
+				{
+					discard(template);
+					continue;
+				}
+
+				// Only false when stop() interrupted the search.
+				if(!template.block.mineBlock(ColeChain.targetFor(chain.size(), chain::getBlock), ColeChain.miner)) break;
+
+				boolean stale = false;
+				boolean committed = false;
+
+				ColeChain.state.beginWrite();
+				try
+				{
+					stale = ColeChain.state.current().getTip() != tip;
+					if(!stale) committed = ColeChain.submitBlock(template.block);
+				}
+				finally
+				{
+					ColeChain.state.endWrite();
+				}
+
+				/*
+				 * Either way the transactions go back to the mempool one at a
+				 * time. An invalid block is usually down to one of them, which
+				 * the mempool or the next assembly's UTXOView turns away, so
+				 * the rest aren't lost with it.
+				 */
+				if(stale || !committed) discard(template);
+				else inFlight.remove(template);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Drops a template, returns its transactions to the mempool, and restarts assembly from the tip.
+	private void discard(Template template)
+	{
+		inFlight.remove(template);
+		rebase = true;
+
+		Log.info("pipeline.discard", "transactions", template.block.transactions.size());
+
+		for(Transaction transaction : template.block.transactions)
+		{
+			// Back to how it was before assembly generated an id and outputs.
+			transaction.transactionId = null;
+			transaction.outputs.clear();
+			for(TransactionInput input : transaction.inputs) input.UTXO = null;
+
+			mempool.submit(transaction);
+		}
+	}
+
+	/*
+	 * The chain's unspent outputs plus the effects of blocks that
+	 * have been assembled but not committed yet, and of transactions
+	 * accepted so far into the block being assembled.
+	 */
+	private static class UTXOView
+	{
+		private final ChainState.Snapshot base;
+		private final HashMap<String, TransactionOutput> created = new HashMap<>();
+		private final HashSet<String> spent = new HashSet<>();
+
+		UTXOView(ChainState.Snapshot base, List<Template> pending)
+		{
+			this.base = base;
+
+			for(Template template : pending)
+			{
+				for(Transaction transaction : template.block.transactions) apply(transaction);
+			}
+		}
+
+		TransactionOutput get(String id)
+		{
+			if(spent.contains(id)) return null;
+
+			TransactionOutput output = created.get(id);
+			return output != null ? output : base.getOutput(id);
+		}
+
+		// Accepts the transaction into the view if every input is unspent and covers its value.
+		boolean validate(Transaction transaction)
+		{
+			for(TransactionInput input : transaction.inputs)
+			{
+				if(get(input.transactionOutputId) == null)
+				{
+					Transaction.rejected("spent_output");
+					Log.info("pipeline.rejected", "reason", "spent_output", "output", input.transactionOutputId);
+					return false;
+				}
+			}
+
+			if(!transaction.prepare(this::get)) return false;
+
+			apply(transaction);
+			return true;
+		}
+
+		private void apply(Transaction transaction)
+		{
+			for(TransactionInput input : transaction.inputs)
+			{
+				spent.add(input.transactionOutputId);
+				created.remove(input.transactionOutputId);
+			}
+
+			for(TransactionOutput output : transaction.outputs)
+			{
+				created.put(output.id, output);
+			}
+		}
+	}
+}
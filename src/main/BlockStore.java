@@ -0,0 +1,350 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/*
+ * 18 October 2026
+ * BlockStore.java
+ *
+ * Append-only on disk storage for the chain. Blocks are
+ * written one after another into numbered segment files,
+ * each record being:
+ *
+ *   [int length][int crc32][block bytes]
+ *
+ * with the block bytes in BlockCodec's format.
+ *
+ * An in memory index maps height to segment and offset, and
+ * reads go through memory mapped segments so looking up one
+ * block only decodes that block.
+ */
+
+public class BlockStore implements Closeable
+{
+	/*
+	 * When appended blocks are forced to disk.
+	 * EVERY_APPEND survives a power cut after append returns.
+	 * ON_CLOSE leaves it to the OS until the store is closed.
+	 */
+	public enum FsyncPolicy { EVERY_APPEND, ON_CLOSE }
+
+	// Default largest size of a segment file.
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	// Size of the length and checksum in front of every record.
+	private static final int RECORD_HEADER = 8;
+
+	private final File directory;
+	private final long segmentSize;
+	private final FsyncPolicy fsyncPolicy;
+
+	// Open segment files, in order.
+	private final ArrayList<FileChannel> segments = new ArrayList<>();
+
+	// Read only mappings of each segment, remapped as the last one grows.
+	private final ArrayList<MappedByteBuffer> mappings = new ArrayList<>();
+
+	// Height -> segment number (high 16 bits) and record offset (low 48 bits).
+	private long[] positions = new long[1024];
+	private int size;
+
+	// Block hash -> height.
+	private final HashMap<String, Integer> heights = new HashMap<>();
+
+	public BlockStore(File directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_SIZE, FsyncPolicy.EVERY_APPEND);
+	}
+
+	/**
+	 *
+	 * @param directory : Where the segment files live.
+	 * @param segmentSize : Size after which a new segment is started, at most Integer.MAX_VALUE.
+	 * @param fsyncPolicy : When appends are forced to disk.
+	 *
+	 * Opens the store and rebuilds the index from the existing segments.
+	 * Segments are read through a single mapping addressed by int
+	 * offsets, which is what caps their size.
+	 */
+	public BlockStore(File directory, long segmentSize, FsyncPolicy fsyncPolicy) throws IOException
+	{
+		if(segmentSize <= 0 || segmentSize > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Segment size must be between 1 and " + Integer.MAX_VALUE + " bytes.");
+		}
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Unable to create block store directory " + directory);
+		}
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.fsyncPolicy = fsyncPolicy;
+
+		for(int s = 0; segmentFile(s).exists(); ++s)
+		{
+			segments.add(FileChannel.open(segmentFile(s).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+			mappings.add(null);
+			scanSegment(s);
+		}
+	}
+
+	private File segmentFile(int segment)
+	{
+		return new File(directory, String.format("%08d.blk", segment));
+	}
+
+	/*
+	 * Walks the records of a segment, checking each checksum and
+	 * adding it to the index. A torn or corrupt record can only be
+	 * the result of a crash during an append, so the segment is cut
+	 * back to the last good record.
+	 */
+	private void scanSegment(int segment) throws IOException
+	{
+		FileChannel channel = segments.get(segment);
+		if(channel.size() > Integer.MAX_VALUE)
+		{
+			throw new IOException("Segment " + segmentFile(segment) + " is too large to map.");
+		}
+
+		ByteBuffer data = map(segment);
+		long offset = 0;
+
+		while(offset + RECORD_HEADER <= data.limit())
+		{
+			int length = data.getInt((int) offset);
+			int crc = data.getInt((int) offset + 4);
+			long end = offset + RECORD_HEADER + length;
+
+			if(length <= 0 || end > data.limit()) break;
+
+			ByteBuffer payload = slice(data, offset + RECORD_HEADER, length);
+			if(checksum(payload) != crc) break;
+
+			index(BlockCodec.peekHash(payload), segment, offset);
+			offset = end;
+		}
+
+		if(offset < channel.size())
+		{
+			Log.warn("store.truncate_damaged", "segment", segment, "offset", offset);
+			channel.truncate(offset);
+			channel.force(true);
+			mappings.set(segment, null);
+		}
+	}
+
+	private void index(String hash, int segment, long offset)
+	{
+		if(size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+
+		positions[size] = ((long) segment << 48) | offset;
+		heights.put(hash, size);
+		size++;
+	}
+
+	/**
+	 *
+	 * @param block : The next block on the chain.
+	 * @return : The height the block was stored at.
+	 *
+	 * Appends a block to the current segment, starting a new one
+	 * when the current segment is full.
+	 */
+	public synchronized int append(Block block) throws IOException
+	{
+		byte[] payload = BlockCodec.encode(block);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+		record.putInt(payload.length);
+		record.putInt(checksum(ByteBuffer.wrap(payload)));
+		record.put(payload);
+		record.flip();
+
+		// Starts a new segment once the current one is full. Oversized blocks get a segment to themselves.
+		long currentSize = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).size();
+		if(segments.isEmpty() || (currentSize > 0 && currentSize + record.remaining() > segmentSize))
+		{
+			int next = segments.size();
+			segments.add(FileChannel.open(segmentFile(next).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+			mappings.add(null);
+
+			// Forcing the file alone doesn't make its directory entry durable.
+			if(fsyncPolicy == FsyncPolicy.EVERY_APPEND) forceDirectory();
+		}
+
+		int segment = segments.size() - 1;
+		FileChannel channel = segments.get(segment);
+		long offset = channel.size();
+
+		while(record.hasRemaining())
+		{
+			channel.write(record, offset + record.position());
+		}
+
+		if(fsyncPolicy == FsyncPolicy.EVERY_APPEND) channel.force(false);
+
+		index(block.hash, segment, offset);
+		return size - 1;
+	}
+
+	/**
+	 *
+	 * @param newSize : Number of blocks to keep.
+	 *
+	 * Drops every block from height newSize on, e.g. when the chain
+	 * switches to a fork. Later segments are deleted first, so a
+	 * crash part way through still leaves a clean prefix.
+	 */
+	public synchronized void truncate(int newSize) throws IOException
+	{
+		if(newSize < 0 || newSize > size) throw new IndexOutOfBoundsException("Can't truncate to " + newSize + " blocks");
+		if(newSize == size) return;
+
+		int segment = (int) (positions[newSize] >>> 48);
+		long offset = positions[newSize] & 0xffffffffffffL;
+
+		for(int s = segments.size() - 1; s > segment; --s)
+		{
+			segments.remove(s).close();
+			mappings.remove(s);
+			Files.delete(segmentFile(s).toPath());
+		}
+		forceDirectory();
+
+		FileChannel channel = segments.get(segment);
+		channel.truncate(offset);
+		channel.force(true);
+		mappings.set(segment, null);
+
+		heights.values().removeIf(height -> height >= newSize);
+		size = newSize;
+	}
+
+	/**
+	 *
+	 * @param height : Height of the block.
+	 * @return : The block at that height.
+	 */
+	public synchronized Block get(int height) throws IOException
+	{
+		if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height);
+
+		int segment = (int) (positions[height] >>> 48);
+		long offset = positions[height] & 0xffffffffffffL;
+
+		ByteBuffer data = map(segment);
+		if(offset + RECORD_HEADER > data.limit())
+		{
+			// The segment grew since it was mapped.
+			mappings.set(segment, null);
+			data = map(segment);
+		}
+
+		int length = data.getInt((int) offset);
+		return BlockCodec.decodeBlock(slice(data, offset + RECORD_HEADER, length));
+	}
+
+	/**
+	 *
+	 * @param hash : Hash of the block.
+	 * @return : The block, or null if it isn't stored.
+	 */
+	public synchronized Block get(String hash) throws IOException
+	{
+		Integer height = heights.get(hash);
+		return height == null ? null : get(height);
+	}
+
+	/**
+	 *
+	 * @param hash : Hash of the block.
+	 * @return : Height of the block, or -1 if it isn't stored.
+	 */
+	public synchronized int getHeight(String hash)
+	{
+		return heights.getOrDefault(hash, -1);
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	// Maps a whole segment read only, reusing the mapping while it is current.
+	private ByteBuffer map(int segment) throws IOException
+	{
+		MappedByteBuffer mapped = mappings.get(segment);
+		FileChannel channel = segments.get(segment);
+
+		if(mapped == null || mapped.capacity() < channel.size())
+		{
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mappings.set(segment, mapped);
+		}
+
+		return mapped.duplicate();
+	}
+
+	// Forces the directory's entries to disk, so created and deleted segments survive a power cut.
+	private void forceDirectory() throws IOException
+	{
+		FileChannel channel;
+		try
+		{
+			channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+		}
+		catch(IOException e)
+		{
+			// Some platforms, e.g. Windows, can't open a directory to force it.
+			return;
+		}
+
+		try(FileChannel dir = channel)
+		{
+			dir.force(true);
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer data, long offset, int length)
+	{
+		ByteBuffer view = data.duplicate();
+		view.position((int) offset);
+		view.limit((int) offset + length);
+		return view.slice();
+	}
+
+	private static int checksum(ByteBuffer payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		return (int) crc.getValue();
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		for(FileChannel channel : segments)
+		{
+			if(fsyncPolicy == FsyncPolicy.ON_CLOSE) channel.force(false);
+			channel.close();
+		}
+
+		if(fsyncPolicy == FsyncPolicy.ON_CLOSE) forceDirectory();
+
+		segments.clear();
+		mappings.clear();
+	}
+}
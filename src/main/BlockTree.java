@@ -0,0 +1,157 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * 18 October 2026
+ * BlockTree.java
+ *
+ * Every block the node knows about, keyed by hash, with each one
+ * pointing at its parent. Competing miners can extend the same
+ * block, so the chain is really a tree, and the branch with the
+ * most cumulative work is the one ColeChain.blockchain follows.
+ */
+
+public class BlockTree
+{
+	/*
+	 * A block in the tree. Undo data is only there while the block
+	 * is, or has been, connected to the unspent outputs.
+	 */
+	public static class Node
+	{
+		public final Block block;
+		public final Node parent;
+		public final int height;
+
+		// Total work of the chain from the root up to and including this block.
+		public final BigInteger chainWork;
+
+		// Blocks built on this one.
+		private final ArrayList<Node> children = new ArrayList<>();
+
+		// How to take this block back off the unspent outputs.
+		BlockUndo undo;
+
+		Node(Block block, Node parent, BigInteger work)
+		{
+			this.block = block;
+			this.parent = parent;
+			this.height = parent == null ? 0 : parent.height + 1;
+			this.chainWork = parent == null ? work : parent.chainWork.add(work);
+		}
+
+		public BlockUndo getUndo()
+		{
+			return undo;
+		}
+	}
+
+	private final HashMap<String, Node> nodes = new HashMap<>();
+
+	/**
+	 *
+	 * @param block : A block whose parent is already in the tree, or the first block.
+	 * @return : The block's node, or the existing one if it was already known.
+	 *
+	 * The block's target must be set. Its work is the number of
+	 * hashes that target takes on average.
+	 */
+	public Node add(Block block)
+	{
+		Node existing = nodes.get(block.hash);
+		if(existing != null) return existing;
+
+		Node parent = nodes.get(block.previousHash);
+		if(parent == null && !nodes.isEmpty())
+		{
+			throw new IllegalArgumentException("Parent " + block.previousHash + " of block " + block.hash + " is unknown.");
+		}
+
+		if(block.getTarget() == null)
+		{
+			throw new IllegalArgumentException("Block " + block.hash + " has no target to work out its work from.");
+		}
+
+		Node node = new Node(block, parent, block.getTarget().work());
+		if(parent != null) parent.children.add(node);
+		nodes.put(block.hash, node);
+		return node;
+	}
+
+	/**
+	 *
+	 * @param node : A node to drop, e.g. because its block turned out to be invalid.
+	 *
+	 * Drops it along with everything built on it.
+	 */
+	public void remove(Node node)
+	{
+		if(node.parent != null) node.parent.children.remove(node);
+
+		ArrayList<Node> stack = new ArrayList<>();
+		stack.add(node);
+		while(!stack.isEmpty())
+		{
+			Node next = stack.remove(stack.size() - 1);
+			nodes.remove(next.block.hash);
+			stack.addAll(next.children);
+		}
+	}
+
+	public Node get(String hash)
+	{
+		return nodes.get(hash);
+	}
+
+	public boolean contains(String hash)
+	{
+		return nodes.containsKey(hash);
+	}
+
+	public int size()
+	{
+		return nodes.size();
+	}
+
+	public void clear()
+	{
+		nodes.clear();
+	}
+
+	/**
+	 *
+	 * @param a : A node.
+	 * @param b : Another node.
+	 * @return : The last block both branches share.
+	 */
+	public static Node forkPoint(Node a, Node b)
+	{
+		while(a.height > b.height) a = a.parent;
+		while(b.height > a.height) b = b.parent;
+
+		while(a != b)
+		{
+			a = a.parent;
+			b = b.parent;
+		}
+
+		return a;
+	}
+
+	/**
+	 *
+	 * @param from : An ancestor of to.
+	 * @param to : A node.
+	 * @return : The blocks after from up to and including to, oldest first.
+	 */
+	public static List<Node> path(Node from, Node to)
+	{
+		ArrayList<Node> path = new ArrayList<>();
+		for(Node n = to; n != from; n = n.parent) path.add(n);
+		Collections.reverse(path);
+		return path;
+	}
+}
@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+
+/*
+ * 18 October 2026
+ * BlockUndo.java
+ *
+ * What connecting a block did to the unspent outputs: the outputs
+ * its transactions spent and the ones they created. Enough to put
+ * the set back exactly as it was before the block, without
+ * replaying anything from genesis.
+ */
+
+public class BlockUndo
+{
+	// Outputs the block spent, in the order it spent them.
+	private final ArrayList<TransactionOutput> spent = new ArrayList<>();
+
+	// Outputs the block created, in the order it created them.
+	private final ArrayList<TransactionOutput> created = new ArrayList<>();
+
+	private BlockUndo()
+	{
+	}
+
+	/**
+	 *
+	 * @param block : A block whose inputs are linked to the outputs they spend,
+	 * as they are once it has been processed or validated.
+	 * @return : The changes the block made, or null if an input isn't linked.
+	 */
+	public static BlockUndo of(Block block)
+	{
+		BlockUndo undo = new BlockUndo();
+
+		// Outputs both created and spent inside the block weren't there before it.
+		HashSet<String> createdHere = new HashSet<>();
+
+		for(Transaction transaction : block.transactions)
+		{
+			if(transaction.inputs != null)
+			{
+				for(TransactionInput input : transaction.inputs)
+				{
+					// Can't tell what it spent, so there's nothing to undo with.
+					if(input.UTXO == null) return null;
+
+					if(!createdHere.contains(input.UTXO.id)) undo.spent.add(input.UTXO);
+				}
+			}
+
+			undo.created.addAll(transaction.outputs);
+			for(TransactionOutput output : transaction.outputs) createdHere.add(output.id);
+		}
+
+		return undo;
+	}
+
+	/**
+	 *
+	 * @param UTXOs : The set as of this block.
+	 *
+	 * Puts the set back to how it was before the block. Listeners
+	 * hear about each output as it goes.
+	 */
+	public void undo(UTXOSet UTXOs)
+	{
+		for(int o = created.size() - 1; o >= 0; --o) UTXOs.remove(created.get(o).id);
+		for(int o = spent.size() - 1; o >= 0; --o) UTXOs.put(spent.get(o).id, spent.get(o));
+	}
+
+	/**
+	 *
+	 * @param UTXOs : Validation's copy of the set as of this block.
+	 * @param commitment : Commitment over that copy.
+	 *
+	 * As undo(UTXOSet), for a plain map and its commitment.
+	 */
+	public void undo(Map<String, TransactionOutput> UTXOs, UTXOCommitment commitment)
+	{
+		for(int o = created.size() - 1; o >= 0; --o)
+		{
+			TransactionOutput removed = UTXOs.remove(created.get(o).id);
+			if(removed != null) commitment.remove(removed);
+		}
+
+		for(int o = spent.size() - 1; o >= 0; --o)
+		{
+			TransactionOutput output = spent.get(o);
+			if(UTXOs.put(output.id, output) == null) commitment.add(output);
+		}
+	}
+
+	// Number of outputs the block touched, spent and created.
+	public int size()
+	{
+		return spent.size() + created.size();
+	}
+}
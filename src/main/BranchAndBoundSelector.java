@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+
+/*
+ * 18 October 2026
+ * BranchAndBoundSelector.java
+ *
+ * Looks for a set of outputs that adds up to the target exactly,
+ * or to within a tolerance of it, so the payment leaves little or
+ * no change behind to become the next round of dust.
+ *
+ * A depth first search over the outputs from largest to smallest,
+ * deciding to include or skip each one. A branch is dropped once
+ * it overshoots the window or once everything left couldn't reach
+ * the target. The search gives up after a fixed number of steps
+ * and falls back to another selector.
+ */
+
+public class BranchAndBoundSelector implements CoinSelector
+{
+	// Steps the search may take before falling back.
+	public static final int DEFAULT_MAX_TRIES = 100_000;
+
+	// How far over the target a match may go, in base units.
+	private final long tolerance;
+
+	private final int maxTries;
+
+	// Used when no match is found in time.
+	private final CoinSelector fallback;
+
+	public BranchAndBoundSelector()
+	{
+		this(0, DEFAULT_MAX_TRIES, new LargestFirstSelector());
+	}
+
+	/**
+	 *
+	 * @param tolerance : How much change is acceptable, in base units.
+	 * @param maxTries : Steps the search may take.
+	 * @param fallback : Selector to use when no match turns up.
+	 */
+	public BranchAndBoundSelector(long tolerance, int maxTries, CoinSelector fallback)
+	{
+		this.tolerance = tolerance;
+		this.maxTries = maxTries;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public List<TransactionOutput> select(NavigableSet<TransactionOutput> available, long target)
+	{
+		TransactionOutput[] outputs = available.descendingSet().toArray(new TransactionOutput[0]);
+
+		// remaining[i] is the sum of outputs[i] onwards, for pruning.
+		long[] remaining = new long[outputs.length + 1];
+		for(int i = outputs.length - 1; i >= 0; --i) remaining[i] = remaining[i + 1] + outputs[i].value;
+
+		if(remaining[0] < target) return null;
+
+		boolean[] included = new boolean[outputs.length];
+		boolean[] best = null;
+		long bestTotal = Long.MAX_VALUE;
+
+		long total = 0;
+		int depth = 0;
+
+		for(int tries = 0; tries < maxTries; ++tries)
+		{
+			boolean backtrack = false;
+
+			if(total + remaining[depth] < target || total > target + tolerance || total >= bestTotal)
+			{
+				// Can't reach the target, or already worse than a match we have.
+				backtrack = true;
+			}
+			else if(total >= target)
+			{
+				best = included.clone();
+				bestTotal = total;
+				if(total == target) break;
+				backtrack = true;
+			}
+
+			if(backtrack)
+			{
+				// Undoes the last inclusion and tries skipping that output instead.
+				while(depth > 0 && !included[depth - 1]) --depth;
+				if(depth == 0) break;
+
+				--depth;
+				included[depth] = false;
+				total -= outputs[depth].value;
+				++depth;
+			}
+			else
+			{
+				included[depth] = true;
+				total += outputs[depth].value;
+				++depth;
+			}
+		}
+
+		if(best == null) return fallback.select(available, target);
+
+		ArrayList<TransactionOutput> selected = new ArrayList<>();
+		for(int i = 0; i < outputs.length; ++i)
+		{
+			if(best[i]) selected.add(outputs[i]);
+		}
+
+		return selected;
+	}
+}
@@ -0,0 +1,402 @@
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/*
+ * 18 October 2026
+ * ChainState.java
+ *
+ * Lets any number of threads read the chain while one thread at a
+ * time changes it.
+ *
+ * Writers take the write lock, change ColeChain.blockchain and
+ * ColeChain.UTXOs as before, and publish a new Snapshot when they
+ * let go. A Snapshot never changes once published, so readers just
+ * grab the current one and ask it about blocks, outputs and balances
+ * without taking any lock. A reader holding an old snapshot keeps a
+ * consistent view of the chain as it was.
+ *
+ * The outputs and balances are kept in PersistentMaps, updated from
+ * the UTXOSet's events, so publishing a version costs nothing beyond
+ * the changes since the last one.
+ *
+ * Blocks, transactions and spends are indexed by hash as they're
+ * published. The HashIndexes are shared by every snapshot and each
+ * snapshot checks a hit against its own blocks, so a lookup only
+ * finds what is on that version of the chain.
+ */
+
+public class ChainState implements UTXOListener
+{
+	private final List<Block> blockchain;
+	private final UTXOSet UTXOs;
+
+	// Only one thread changes the chain at a time.
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	// The writer's working versions, published with the next snapshot.
+	private PersistentMap<String, TransactionOutput> outputs = PersistentMap.empty();
+	private PersistentMap<Address, Long> balances = PersistentMap.empty();
+
+	/*
+	 * Blocks on the chain, shared between snapshots. The writer only
+	 * ever writes past the end of every published snapshot, and swaps
+	 * in a copy before overwriting anything, e.g. on a reorganization.
+	 */
+	private Block[] blocks = new Block[1024];
+
+	// Block hash -> height.
+	private HashIndex blockIndex = new HashIndex();
+
+	// Transaction id -> height and position in its block.
+	private HashIndex transactionIndex = new HashIndex();
+
+	// Output id -> height and position of the transaction that spent it.
+	private HashIndex spenderIndex = new HashIndex();
+
+	private volatile Snapshot current;
+
+	// Told about each block as it's published on the chain.
+	private final CopyOnWriteArrayList<Consumer<Block>> blockListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 *
+	 * @param blockchain : The chain the writer changes.
+	 * @param UTXOs : Its unspent outputs.
+	 */
+	public ChainState(List<Block> blockchain, UTXOSet UTXOs)
+	{
+		this.blockchain = blockchain;
+		this.UTXOs = UTXOs;
+
+		for(TransactionOutput output : UTXOs.values()) outputCreated(output);
+		UTXOs.addListener(this);
+
+		current = new Snapshot(0, blocks, 0, outputs, balances, UTXOs.getCommitmentHex(),
+							   blockIndex, transactionIndex, spenderIndex);
+		publish();
+	}
+
+	/**
+	 *
+	 * @return : The latest published view of the chain.
+	 */
+	public Snapshot current()
+	{
+		return current;
+	}
+
+	/**
+	 *
+	 * Takes the write lock. Re-entrant, so a writer can call other
+	 * writing methods.
+	 */
+	public void beginWrite()
+	{
+		writeLock.lock();
+	}
+
+	/**
+	 *
+	 * Publishes what the writer changed, then lets go of the lock.
+	 * Nested writes only publish when the outermost one finishes.
+	 */
+	public void endWrite()
+	{
+		try
+		{
+			if(writeLock.getHoldCount() == 1) publish();
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	public boolean isWriting()
+	{
+		return writeLock.isHeldByCurrentThread();
+	}
+
+	/**
+	 *
+	 * @param listener : Called with every block newly published on the chain, oldest first.
+	 *
+	 * Called while the writer still holds the lock, so it should
+	 * hand the block off rather than do any real work.
+	 */
+	public void addBlockListener(Consumer<Block> listener)
+	{
+		blockListeners.add(listener);
+	}
+
+	public void removeBlockListener(Consumer<Block> listener)
+	{
+		blockListeners.remove(listener);
+	}
+
+	// Captures the chain and outputs as they are now as the current snapshot.
+	private void publish()
+	{
+		Snapshot previous = current;
+		int size = blockchain.size();
+
+		// Finds how much of the published chain is still there, looking back from its end.
+		int kept = Math.min(previous.size, size);
+		while(kept > 0 && blocks[kept - 1] != blockchain.get(kept - 1)) --kept;
+
+		// Slots older snapshots can see are about to be overwritten, so work on a copy.
+		if(kept < previous.size) blocks = blocks.clone();
+		if(size > blocks.length) blocks = Arrays.copyOf(blocks, Math.max(size, blocks.length * 2));
+
+		// A whole new chain, e.g. loaded from disk. Older snapshots keep the old indexes.
+		if(kept == 0 && previous.size > 0)
+		{
+			blockIndex = new HashIndex();
+			transactionIndex = new HashIndex();
+			spenderIndex = new HashIndex();
+		}
+
+		for(int height = kept; height < size; ++height)
+		{
+			Block block = blockchain.get(height);
+			blocks[height] = block;
+			index(block, height);
+		}
+
+		current = new Snapshot(previous.version + 1, blocks, size, outputs, balances, UTXOs.getCommitmentHex(),
+							   blockIndex, transactionIndex, spenderIndex);
+
+		for(int height = kept; height < size; ++height)
+		{
+			for(Consumer<Block> listener : blockListeners) listener.accept(blocks[height]);
+		}
+	}
+
+	/*
+	 * Adds a block's hash, transaction ids and spent outputs to the
+	 * indexes. Blocks taken off the chain stay in them, and are
+	 * simply not found by snapshots that don't have them.
+	 */
+	private void index(Block block, int height)
+	{
+		blockIndex.add(block.hash, height);
+
+		for(int position = 0; position < block.transactions.size(); ++position)
+		{
+			Transaction transaction = block.transactions.get(position);
+			long location = HashIndex.pack(height, position);
+
+			if(transaction.transactionId != null) transactionIndex.add(transaction.transactionId, location);
+			if(transaction.inputs == null) continue;
+
+			for(TransactionInput input : transaction.inputs)
+			{
+				spenderIndex.add(input.transactionOutputId, location);
+			}
+		}
+	}
+
+	@Override
+	public void outputCreated(TransactionOutput output)
+	{
+		outputs = outputs.plus(output.id, output);
+
+		Address owner = Address.of(output.recipient);
+		Long balance = balances.get(owner);
+		balances = balances.plus(owner, balance == null ? output.value : Math.addExact(balance, output.value));
+	}
+
+	@Override
+	public void outputSpent(TransactionOutput output)
+	{
+		outputs = outputs.minus(output.id);
+
+		Address owner = Address.of(output.recipient);
+		Long balance = balances.get(owner);
+		if(balance == null) return;
+
+		long remaining = balance - output.value;
+		balances = remaining == 0 ? balances.minus(owner) : balances.plus(owner, remaining);
+	}
+
+	/*
+	 * One published version of the chain. Immutable, so it can be
+	 * shared with any number of threads.
+	 */
+	public final class Snapshot
+	{
+		// Counts up by one with every publish.
+		public final long version;
+
+		private final Block[] blocks;
+		private final int size;
+		private final PersistentMap<String, TransactionOutput> outputs;
+		private final PersistentMap<Address, Long> balances;
+		private final String UTXOCommitment;
+		private final HashIndex blockIndex;
+		private final HashIndex transactionIndex;
+		private final HashIndex spenderIndex;
+
+		private Snapshot(long version, Block[] blocks, int size, PersistentMap<String, TransactionOutput> outputs,
+						 PersistentMap<Address, Long> balances, String UTXOCommitment,
+						 HashIndex blockIndex, HashIndex transactionIndex, HashIndex spenderIndex)
+		{
+			this.version = version;
+			this.blocks = blocks;
+			this.size = size;
+			this.outputs = outputs;
+			this.balances = balances;
+			this.UTXOCommitment = UTXOCommitment;
+			this.blockIndex = blockIndex;
+			this.transactionIndex = transactionIndex;
+			this.spenderIndex = spenderIndex;
+		}
+
+		// Number of blocks on the chain.
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 *
+		 * @return : The last block on the chain, or null if there isn't one.
+		 */
+		public Block getTip()
+		{
+			return size == 0 ? null : blocks[size - 1];
+		}
+
+		public Block getBlock(int height)
+		{
+			if(height < 0 || height >= size) throw new IndexOutOfBoundsException("No block at height " + height);
+			return blocks[height];
+		}
+
+		/**
+		 *
+		 * @param hash : Hash of a block.
+		 * @return : Its height on this version of the chain, or -1.
+		 */
+		public int getHeight(String hash)
+		{
+			long height = blockIndex.find(hash, h -> h < size && blocks[(int) h].hash.equals(hash));
+			return (int) height;
+		}
+
+		/**
+		 *
+		 * @param hash : Hash of a block.
+		 * @return : The block, or null if it isn't on this version of the chain.
+		 */
+		public Block getBlock(String hash)
+		{
+			int height = getHeight(hash);
+			return height < 0 ? null : blocks[height];
+		}
+
+		/**
+		 *
+		 * @param transactionId : Id of a transaction.
+		 * @return : The transaction, or null if it isn't in a block on this version of the chain.
+		 */
+		public Transaction getTransaction(String transactionId)
+		{
+			long location = locate(transactionId);
+			return location < 0 ? null : transactionAt(location);
+		}
+
+		/**
+		 *
+		 * @param transactionId : Id of a transaction.
+		 * @return : Height of the block it's in on this version of the chain, or -1.
+		 */
+		public int getTransactionHeight(String transactionId)
+		{
+			long location = locate(transactionId);
+			return location < 0 ? -1 : HashIndex.high(location);
+		}
+
+		/**
+		 *
+		 * @param outputId : Id of an output.
+		 * @return : The transaction on this version of the chain that spent it, or null if none has.
+		 */
+		public Transaction getSpender(String outputId)
+		{
+			long location = spenderIndex.find(outputId, l -> spends(transactionAt(l), outputId));
+			return location < 0 ? null : transactionAt(location);
+		}
+
+		// Packed height and position of a transaction in this version, or -1.
+		private long locate(String transactionId)
+		{
+			return transactionIndex.find(transactionId, l ->
+			{
+				Transaction transaction = transactionAt(l);
+				return transaction != null && transactionId.equals(transaction.transactionId);
+			});
+		}
+
+		// The transaction at a packed height and position, or null if there isn't one in this version.
+		private Transaction transactionAt(long location)
+		{
+			int height = HashIndex.high(location);
+			int position = HashIndex.low(location);
+			if(height >= size) return null;
+
+			List<Transaction> transactions = blocks[height].transactions;
+			return position < transactions.size() ? transactions.get(position) : null;
+		}
+
+		private boolean spends(Transaction transaction, String outputId)
+		{
+			if(transaction == null || transaction.inputs == null) return false;
+
+			for(TransactionInput input : transaction.inputs)
+			{
+				if(input.transactionOutputId.equals(outputId)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 *
+		 * @param id : Output id.
+		 * @return : The output if it's unspent in this version, otherwise null.
+		 */
+		public TransactionOutput getOutput(String id)
+		{
+			return outputs.get(id);
+		}
+
+		/**
+		 *
+		 * @param owner : Public key of the owner.
+		 * @return : Sum of the owner's unspent outputs in this version.
+		 */
+		public long getBalance(PublicKey owner)
+		{
+			Long balance = balances.get(Address.of(owner));
+			return balance == null ? 0 : balance;
+		}
+
+		public int getUTXOCount()
+		{
+			return outputs.size();
+		}
+
+		/**
+		 *
+		 * @return : Commitment over this version's unspent outputs.
+		 */
+		public String getUTXOCommitment()
+		{
+			return UTXOCommitment;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * 18 October 2026
+ * Checkpoint.java
+ *
+ * Records how far the chain has been validated: the height
+ * and hash of the last valid block and the unspent outputs
+ * as of that block. Validation resumes from here instead
+ * of replaying the chain from genesis.
+ */
+
+public class Checkpoint
+{
+	// Height of the last validated block.
+	public final int height;
+
+	// Hash of the last validated block.
+	public final String tipHash;
+
+	// Unspent outputs as of the last validated block.
+	private HashMap<String, TransactionOutput> UTXOs;
+
+	// Commitment over the unspent outputs.
+	private final UTXOCommitment commitment;
+
+	public Checkpoint(int height, String tipHash, HashMap<String, TransactionOutput> UTXOs, UTXOCommitment commitment)
+	{
+		this.height = height;
+		this.tipHash = tipHash;
+		this.UTXOs = UTXOs;
+		this.commitment = commitment.copy();
+	}
+
+	/**
+	 *
+	 * @param blockchain : The chain to compare against.
+	 * @return : Whether the chain still contains this checkpoint's tip at its height.
+	 */
+	public boolean matches(List<Block> blockchain)
+	{
+		return UTXOs != null &&
+			   height < blockchain.size() &&
+			   blockchain.get(height).hash.equals(tipHash);
+	}
+
+	/**
+	 *
+	 * @return : The checkpoint's unspent outputs.
+	 *
+	 * Hands the map over to the caller to keep validating on top of,
+	 * rather than copying it. The checkpoint can't be resumed again.
+	 */
+	HashMap<String, TransactionOutput> takeUTXOs()
+	{
+		HashMap<String, TransactionOutput> taken = UTXOs;
+		UTXOs = null;
+		return taken;
+	}
+
+	/**
+	 *
+	 * @return : Copy of the commitment over the unspent outputs.
+	 *
+	 * Stays readable after the outputs are taken, so two nodes can
+	 * compare checkpoints without replaying anything.
+	 */
+	public UTXOCommitment getCommitment()
+	{
+		return commitment.copy();
+	}
+}
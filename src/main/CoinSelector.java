@@ -0,0 +1,30 @@
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/*
+ * 18 October 2026
+ * CoinSelector.java
+ *
+ * Picks which of a wallet's unspent outputs pay for a transaction.
+ *
+ * Every input is looked up, linked and checked again by every
+ * node that validates the block, so the fewer inputs a payment
+ * needs the cheaper it is for the whole chain.
+ */
+
+public interface CoinSelector
+{
+	// Orders outputs from smallest to largest, ties broken by id.
+	Comparator<TransactionOutput> BY_VALUE =
+		Comparator.<TransactionOutput>comparingLong(o -> o.value).thenComparing(o -> o.id);
+
+	/**
+	 *
+	 * @param available : The wallet's spendable outputs, smallest value first.
+	 * @param target : Amount the inputs must cover, in base units.
+	 * @return : Outputs to spend whose values add up to at least target,
+	 * or null when the wallet can't cover it.
+	 */
+	List<TransactionOutput> select(NavigableSet<TransactionOutput> available, long target);
+}
@@ -1,6 +1,13 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.OptionalInt;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 //import com.google.gson.GsonBuilder;
 
@@ -16,14 +23,30 @@ public class ColeChain
 	// Our chain.
 	public static ArrayList<Block> blockchain = new ArrayList<>();
 	
-	// Our collection of all transactions on the chain. 
-	public static HashMap<String, TransactionOutput> UTXOs = new HashMap<>();
+	// Our collection of all unspent transaction outputs on the chain, indexed by owner. 
+	public static UTXOSet UTXOs = new UTXOSet();
 
-	// Problem difficulty for miners.
-	public static int difficulty = 3;
+	/*
+	 * Serialises changes to blockchain and UTXOs and publishes a
+	 * snapshot after each one. Other threads should read through
+	 * state.current() rather than the fields above.
+	 */
+	public static final ChainState state = new ChainState(blockchain, UTXOs);
+
+	// Problem difficulty for miners: leading hex zeroes of the first block's target, the easiest allowed.
+	public static volatile int difficulty = 3;
+	
+	// Moves the target from there so a block takes about a second, checked every 10 blocks.
+	public static DifficultyRetarget retarget = new DifficultyRetarget(1000, 10);
+	
+	// Multi-threaded miner used by addBlock.
+	public static Miner miner = new Miner(Runtime.getRuntime().availableProcessors());
 	
+	// Base units in one coin. Amounts are whole numbers of base units.
+	public static final long COIN = 100_000_000L;
+
 	// Minimum transaction tolerated on chain.
-	public static float minimumTransaction = 0.1f;
+	public static long minimumTransaction = COIN / 10;
 
 	// Two test wallets.
 	public static Wallet walletOne;
@@ -32,6 +55,39 @@ public class ColeChain
 	// The original block.
 	public static Transaction genesisTransaction;
 
+	// Hash of the one genesis block taken from other nodes, e.g. -Dcolechain.genesis=<hash>. None is taken when null.
+	public static volatile String genesisHash = System.getProperty("colechain.genesis");
+
+	// Where mined blocks are persisted. Nothing is written when null.
+	public static BlockStore store;
+
+	// Last point up to which the chain is known to be valid.
+	public static Checkpoint checkpoint;
+
+	// Every known block, including forks. blockchain follows its heaviest branch.
+	public static BlockTree blockTree = new BlockTree();
+
+	private static final Metrics.Histogram VALIDATION_TIME =
+		Metrics.histogram("colechain_block_validation_seconds", "Time to validate one block against the unspent outputs.", Metrics.LATENCY_BUCKETS);
+
+	private static final Metrics.Counter REJECTED_BLOCKS =
+		Metrics.counter("colechain_blocks_rejected_total", "Blocks that failed validation or didn't build on a known block.");
+
+	private static final Metrics.Counter REORGANIZATIONS =
+		Metrics.counter("colechain_reorganizations_total", "Times the chain switched to a branch with more work.");
+
+	static
+	{
+		// Read from the latest snapshot, so scrapes never wait on the writer.
+		Metrics.gauge("colechain_chain_height", "Height of the chain's tip.", () -> state.current().size() - 1);
+		Metrics.gauge("colechain_utxo_set_size", "Unspent outputs on the chain.", () -> state.current().getUTXOCount());
+		Metrics.gauge("colechain_hash_rate", "Hashes per second across the miner's threads on its last block.", () -> miner.getTotalHashRate());
+		Metrics.gauge("colechain_tip_work", "Expected hashes to mine a block at the tip's target.", () -> {
+			Block tip = state.current().getTip();
+			return tip == null || tip.getTarget() == null ? 0 : tip.getTarget().work().doubleValue();
+		});
+	}
+
 	public static void main(String[] args)
 	{
 		//Adds bouncycastle as a security provider in order to use algorithms.
@@ -44,7 +100,7 @@ public class ColeChain
 		Wallet coinbase = new Wallet();
 
 		// Creates genesis transaction. Sends 100 ColeCoins to walletOne.
-		genesisTransaction = new Transaction(coinbase.publickey, walletOne.publickey, 100, null);
+		genesisTransaction = new Transaction(coinbase.publickey, walletOne.publickey, 100 * COIN, null);
 		
 		// Manually signing genesis block.
 		genesisTransaction.generateSignature(coinbase.privatekey);	
@@ -58,6 +114,20 @@ public class ColeChain
 		// Adds genesis transaction to our unsigned transaction outputs. 
 		UTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
 
+		// Serves the metrics for as long as the demo runs, e.g. -Dcolechain.metrics.port=9400
+		Integer metricsPort = Integer.getInteger("colechain.metrics.port");
+		if(metricsPort != null)
+		{
+			try
+			{
+				new MetricsServer(metricsPort).start();
+			}
+			catch(IOException e)
+			{
+				Log.error("metrics.unavailable", "port", metricsPort, "error", e.getMessage());
+			}
+		}
+
 		System.out.println("Creating and Mining Genesis block");
 		Block genesis = new Block("0");
 		genesis.addTransaction(genesisTransaction);
@@ -65,28 +135,28 @@ public class ColeChain
 
 		// Testing several blocks.
 		Block block1 = new Block(genesis.hash);
-		System.out.println("\nwalletOne's balance is: " + walletOne.getBalance());
+		System.out.println("\nwalletOne's balance is: " + StringTools.formatAmount(walletOne.getBalance()));
 		System.out.println("\nwalletOne is Attempting to send 65 coins to walletTwo");
-		block1.addTransaction(walletOne.sendFunds(walletTwo.publickey, 65));
+		block1.addTransaction(walletOne.sendFunds(walletTwo.publickey, 65 * COIN));
 		addBlock(block1);
-		System.out.println("\nwalletOne's balance is: " + walletOne.getBalance());
-		System.out.println("walletTwo's balance is: " + walletTwo.getBalance());
+		System.out.println("\nwalletOne's balance is: " + StringTools.formatAmount(walletOne.getBalance()));
+		System.out.println("walletTwo's balance is: " + StringTools.formatAmount(walletTwo.getBalance()));
 
 		Block block2 = new Block(block1.hash);
 		System.out.println("\nwalletOne Attempting to send 1000 coins, more than it has");
-		block2.addTransaction(walletOne.sendFunds(walletTwo.publickey, 1000));
+		block2.addTransaction(walletOne.sendFunds(walletTwo.publickey, 1000 * COIN));
 		addBlock(block2);
-		System.out.println("\nwalletOne's balance is: " + walletOne.getBalance());
-		System.out.println("walletTwo's balance is: " + walletTwo.getBalance());
+		System.out.println("\nwalletOne's balance is: " + StringTools.formatAmount(walletOne.getBalance()));
+		System.out.println("walletTwo's balance is: " + StringTools.formatAmount(walletTwo.getBalance()));
 
 		Block block3 = new Block(block2.hash);
 		System.out.println("\nwalletTwo is Attempting to send 20 coins to walletOne");
-		block3.addTransaction(walletTwo.sendFunds( walletOne.publickey, 10));
-		System.out.println("\nwalletOne's balance is: " + walletOne.getBalance());
-		System.out.println("walletTwo's balance is: " + walletTwo.getBalance());
+		block3.addTransaction(walletTwo.sendFunds( walletOne.publickey, 10 * COIN));
+		System.out.println("\nwalletOne's balance is: " + StringTools.formatAmount(walletOne.getBalance()));
+		System.out.println("walletTwo's balance is: " + StringTools.formatAmount(walletTwo.getBalance()));
 
 		// Is the chain valid?
-		isValid();
+		isValid(true);
 
 	}
 
@@ -99,59 +169,227 @@ public class ColeChain
 	 */
 	public static boolean isValid()
 	{
-		Block currentBlock;
-		Block previousBlock;
-		String hashTarget = new String(new char[difficulty]).replace('\0', '0');
+		return isValid(false);
+	}
+
+	/**
+	 * 
+	 * @param parallel : Whether to check hashes and signatures across all cores first.
+	 * @return : boolean determining if the chain is in fact valid.
+	 * 
+	 * In parallel mode block hashes, proof of work and transaction signatures
+	 * are checked up front on the common ForkJoin pool, since none of them
+	 * depend on each other. The walk over the chain that tracks spent outputs
+	 * still runs in order afterwards. Blocks writers for the duration;
+	 * readers carry on against their snapshots.
+	 */
+	public static boolean isValid(boolean parallel)
+	{
+		state.beginWrite();
+		try
+		{
+			if(parallel && !verifyInParallel(1)) return false;
+
+			// A hashmap to temporarily add the unsigned transaction outputs to.
+			HashMap<String, TransactionOutput> tempUTXOs = genesisUTXOs();
+			UTXOCommitment commitment = startCommitment(tempUTXOs);
+
+			if(!validateBlocks(1, tempUTXOs, commitment, parallel)) return false;
+
+			Log.info("chain.valid", "height", blockchain.size() - 1);
+			return true;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param fullReverify : Whether to ignore the checkpoint and start from genesis.
+	 * @return : Whether the blocks since the last checkpoint are valid.
+	 * 
+	 * Only validates blocks appended after the last checkpoint, picking up
+	 * the unspent outputs where that run left off, then moves the checkpoint
+	 * to the new tip. Falls back to a full run when there is no checkpoint
+	 * or the chain no longer contains its tip.
+	 */
+	public static boolean validateIncremental(boolean fullReverify)
+	{
+		state.beginWrite();
+		try
+		{
+			int from;
+			HashMap<String, TransactionOutput> tempUTXOs;
+			UTXOCommitment commitment;
+
+			if(fullReverify || checkpoint == null || !checkpoint.matches(blockchain))
+			{
+				from = 1;
+				tempUTXOs = genesisUTXOs();
+				commitment = startCommitment(tempUTXOs);
+			}
+			else
+			{
+				from = checkpoint.height + 1;
+				commitment = checkpoint.getCommitment();
+				tempUTXOs = checkpoint.takeUTXOs();
+			}
+
+			// The checkpoint's outputs are consumed either way, so a failure forces a full run next time.
+			checkpoint = null;
+
+			if(!validateBlocks(from, tempUTXOs, commitment, false)) return false;
 
-		// A hashmap to temporarily add the unsigned transaction outputs to.
+			int height = blockchain.size() - 1;
+			checkpoint = new Checkpoint(height, blockchain.get(height).hash, tempUTXOs, commitment);
+			return true;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	// The outputs every validation run starts from.
+	private static HashMap<String, TransactionOutput> genesisUTXOs()
+	{
 		HashMap<String, TransactionOutput> tempUTXOs = new HashMap<>();
 		
-		tempUTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
+		if(genesisTransaction != null)
+		{
+			tempUTXOs.put(genesisTransaction.outputs.get(0).id, genesisTransaction.outputs.get(0));
+		}
+
+		return tempUTXOs;
+	}
 
-		// Iterates over blockchain starting after genesis.
-		for(int i = 1; i < blockchain.size(); ++i)
+	// The commitment over the genesis outputs, recorded on the genesis block.
+	private static UTXOCommitment startCommitment(HashMap<String, TransactionOutput> tempUTXOs)
+	{
+		UTXOCommitment commitment = UTXOCommitment.of(tempUTXOs.values());
+		if(!blockchain.isEmpty()) blockchain.get(0).setUTXOCommitment(commitment.toHex());
+		return commitment;
+	}
+
+	/**
+	 * 
+	 * @param from : Height of the first block to check.
+	 * @param tempUTXOs : Unspent outputs as of the block before from. Updated in place.
+	 * @param commitment : Commitment over tempUTXOs. Updated in place.
+	 * @param skipParallelChecks : Whether hashes and signatures were already checked.
+	 * @return : Whether the blocks are valid.
+	 * 
+	 * Each block that passes has the commitment as of that block
+	 * recorded on it.
+	 */
+	private static boolean validateBlocks(int from, HashMap<String, TransactionOutput> tempUTXOs, UTXOCommitment commitment, boolean skipParallelChecks)
+	{
+		Block currentBlock;
+		Block previousBlock;
+
+		// Iterates over blockchain starting at the requested height.
+		for(int i = from; i < blockchain.size(); ++i)
 		{
+			long start = System.nanoTime();
 			currentBlock = blockchain.get(i);
 			previousBlock = blockchain.get(i-1);
 
 			// Ensures the recorded and generated hashes match.
-			if(!(currentBlock.hash.equals(currentBlock.generateHash())))
+			if(!skipParallelChecks && !(currentBlock.hash.equals(currentBlock.generateHash())))
+			{
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "hash_mismatch");
+				return false;
+			}
+
+			// Ensures the block's transactions are the ones its merkle root commits to.
+			if(!skipParallelChecks && !(currentBlock.getMerkleTree().getRootHex().equals(currentBlock.merkleRoot)))
+			{
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "merkle_root_mismatch");
+				return false;
+			}
+
+			// Ensures no transaction is in the block twice, which the merkle root alone can't show.
+			if(currentBlock.getMerkleTree().hasDuplicates())
 			{
-				System.out.println("Registed hash and generated hash for block " + currentBlock + " do not match.");
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "duplicate_transaction");
 				return false;
 			}
 
 			// Ensures previous block's hash and current block's previous hash match.
 			if(!(previousBlock.hash.equals(currentBlock.previousHash)))
 			{
-				System.out.println("Previous hash of block " + currentBlock + " doesn't match.");
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "previous_hash_mismatch");
 				return false;
 			}
 
-			// Ensures block has been mined legitimately.
-			if(!(currentBlock.hash.substring(0, difficulty).equals(hashTarget)))
+			// Ensures the block isn't dated before the blocks it builds on, which retargeting relies on.
+			if(!meetsMedianTimePast(currentBlock, i, blockchain::get))
 			{
-				System.out.println(currentBlock + " hasn't been mined");
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "time_too_old");
 				return false;
 			}
 
+			// Ensures block has been mined legitimately, against the target its place on the chain calls for.
+			Target target = targetFor(i, blockchain::get);
+			if(!skipParallelChecks && !target.isMetBy(currentBlock.hash))
+			{
+				Log.warn("block.invalid", "height", i, "hash", currentBlock.hash, "reason", "target_not_met", "target", target);
+				return false;
+			}
+			currentBlock.setTarget(target);
+
+			// Checks every signature in the block in one batch.
+			BitSet signatures = skipParallelChecks ? null : BatchVerifier.verify(currentBlock.transactions);
+
 			// Verifies transactions.
 			TransactionOutput tempOutput;
 			for(int t = 0; t < currentBlock.transactions.size(); ++t)
 			{
 				Transaction currentTransaction = currentBlock.transactions.get(t);
 
+				// Ensures the transaction has the shape processing gives it: inputs, a signature, and an output for each party.
+				if(currentTransaction.inputs == null || currentTransaction.signature == null || currentTransaction.outputs.size() != 2)
+				{
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "malformed");
+					return false;
+				}
+
 				// Ensures signature is valid.
-				if(!(currentTransaction.verifySignature()))
+				if(!skipParallelChecks && !signatures.get(t))
 				{
-					System.out.println("Signature on transaction " + t + " is invalid.");
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "bad_signature");
 					return false;
 				}
 
+				// Ids come from the block's sender, so they're worked out again rather than trusted.
+				if(!currentTransaction.calculateHash().equals(currentTransaction.transactionId))
+				{
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "wrong_transaction_id");
+					return false;
+				}
+
+				for(TransactionOutput output : currentTransaction.outputs)
+				{
+					if(!currentTransaction.transactionId.equals(output.parentTransactionId) ||
+					   !TransactionOutput.idFor(output.recipient, output.value, output.parentTransactionId).equals(output.id))
+					{
+						Log.warn("block.invalid", "height", i, "transaction", t, "reason", "wrong_output_id", "output", output.id);
+						return false;
+					}
+				}
+
+				// Blocks taken over from a snapshot were never replayed, so link their inputs here.
+				for(TransactionInput input : currentTransaction.inputs)
+				{
+					if(input.UTXO == null) input.UTXO = tempUTXOs.get(input.transactionOutputId);
+				}
+
 				// Ensures transaction makes a change.
 				if(currentTransaction.getInputsValue() != currentTransaction.getOutputsValue())
 				{
-					System.out.println("Inputs are not equal to outputs on Transaction " + t);
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "inputs_not_outputs");
 					return false;
 				}
 
@@ -162,40 +400,105 @@ public class ColeChain
 
 					if(tempOutput == null)
 					{
-						System.out.println("Referenced input on transaction " + t + " is missing.");
+						Log.warn("block.invalid", "height", i, "transaction", t, "reason", "missing_input", "output", input.transactionOutputId);
+						return false;
+					}
+
+					if(!tempOutput.isMine(currentTransaction.sender))
+					{
+						Log.warn("block.invalid", "height", i, "transaction", t, "reason", "not_owner", "output", input.transactionOutputId);
 						return false;
 					}
 
 					if(input.UTXO.value != tempOutput.value)
 					{
-						System.out.println("Regerenced input Transaction " + t + " value is invalid");
+						Log.warn("block.invalid", "height", i, "transaction", t, "reason", "input_value_mismatch", "output", input.transactionOutputId);
 						return false;
 					}
 
 					tempUTXOs.remove(input.transactionOutputId);
+					commitment.remove(tempOutput);
 				}
 
-				// Adds transaction outputs to our unsigned outputs.
+				// Adds transaction outputs to our unsigned outputs, never over one that's already there.
 				for(TransactionOutput output : currentTransaction.outputs)
 				{
-					tempUTXOs.put(output.id, output);
+					if(tempUTXOs.putIfAbsent(output.id, output) != null)
+					{
+						Log.warn("block.invalid", "height", i, "transaction", t, "reason", "output_exists", "output", output.id);
+						return false;
+					}
+					commitment.add(output);
 				}
 
-				if(currentTransaction.outputs.get(0).recipient != currentTransaction.recipient) 
+				if(!currentTransaction.outputs.get(0).recipient.equals(currentTransaction.recipient)) 
 				{
-					System.out.println("Transaction " + t + " output recipient is not who it should be");
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "wrong_recipient");
 					return false;
 				}
 
-				if(currentTransaction.outputs.get(1).recipient != currentTransaction.sender)
+				if(!currentTransaction.outputs.get(1).recipient.equals(currentTransaction.sender))
 				{
-					System.out.println("Transaction " + t + " output 'change' is not sender");
+					Log.warn("block.invalid", "height", i, "transaction", t, "reason", "change_not_sender");
 					return false;
 				}
 			}
+
+			currentBlock.setUTXOCommitment(commitment.toHex());
+			VALIDATION_TIME.observeSince(start);
+		}
+
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param from : Height of the first block to check.
+	 * @return : Whether every block hash, merkle root, proof of work and signature checks out.
+	 * 
+	 * The order independent half of isValid(true). Reports the lowest
+	 * failing block so the output matches a serial run.
+	 */
+	private static boolean verifyInParallel(int from)
+	{
+		// Each target depends on the one before, so they're worked out and set in order first. Only timestamps are read.
+		Target[] targets = new Target[Math.max(0, blockchain.size() - from)];
+		for(int i = from; i < blockchain.size(); ++i)
+		{
+			targets[i - from] = targetFor(i, blockchain::get);
+			blockchain.get(i).setTarget(targets[i - from]);
+		}
+
+		OptionalInt badBlock = IntStream.range(from, blockchain.size()).parallel()
+			.filter(i -> {
+				Block block = blockchain.get(i);
+				return !block.hash.equals(block.generateHash()) ||
+					   !block.getMerkleTree().getRootHex().equals(block.merkleRoot) ||
+					   !targets[i - from].isMetBy(block.hash);
+			})
+			.min();
+
+		if(badBlock.isPresent())
+		{
+			Log.warn("block.invalid", "height", badBlock.getAsInt(), "hash", blockchain.get(badBlock.getAsInt()).hash,
+					 "reason", "hash_merkle_root_or_target");
+			return false;
+		}
+
+		ArrayList<Transaction> transactions = new ArrayList<>();
+		for(Block block : blockchain.subList(Math.min(from, blockchain.size()), blockchain.size()))
+		{
+			transactions.addAll(block.transactions);
+		}
+
+		boolean signaturesValid = BatchVerifier.verifyAll(transactions);
+
+		if(!signaturesValid)
+		{
+			Log.warn("chain.invalid", "reason", "bad_signature");
+			return false;
 		}
 
-		System.out.println("Blockchain is valid.");
 		return true;
 	}
 
@@ -204,11 +507,638 @@ public class ColeChain
 	 * @param newBlock : Block to be added to the chain.
 	 * 
 	 * Begins by mining the new block before adding it
-	 * to the chain.
+	 * to the chain. Only the new block is validated, starting
+	 * from the last checkpoint.
 	 */
 	public static void addBlock(Block newBlock) 
 	{
-		newBlock.mineBlock(difficulty);
+		// Interrupted, the flag is still set for the caller to see.
+		if(!newBlock.mineBlock(targetFor(blockchain.size(), blockchain::get), miner)) return;
+		commitBlock(newBlock);
+	}
+
+	/**
+	 * 
+	 * @param height : Height of a block, mined or being mined.
+	 * @param chain : The blocks of its branch by height, at least up to height - 1.
+	 * @return : The target the block's hash has to meet.
+	 * 
+	 * The first block's target comes from difficulty and every later
+	 * one from retarget. Ancestors that don't have their target set
+	 * yet, e.g. blocks put on the chain directly, have theirs worked
+	 * out along the way but not set, since the miner calls this
+	 * without the write lock on blocks other threads can see.
+	 */
+	static Target targetFor(int height, IntFunction<Block> chain)
+	{
+		int unset = height;
+		while(unset > 0 && chain.apply(unset - 1).getTarget() == null) --unset;
+
+		int from = unset;
+		Target[] missing = new Target[height - from];
+		IntFunction<Target> targets = h -> h >= from ? missing[h - from] : chain.apply(h).getTarget();
+
+		for(int h = from; h < height; ++h) missing[h - from] = computeTarget(h, chain, targets);
+		return computeTarget(height, chain, targets);
+	}
+
+	// Target at height, given the target of every block below it.
+	private static Target computeTarget(int height, IntFunction<Block> chain, IntFunction<Target> targets)
+	{
+		return height == 0 ? Target.ofLeadingZeroes(difficulty) : retarget.next(height, chain, targets);
+	}
+
+	// The blocks of the branch ending at tip by height, for working out targets off the main chain.
+	private static IntFunction<Block> branch(BlockTree.Node tip)
+	{
+		return height -> {
+			BlockTree.Node node = tip;
+			while(node.height > height) node = node.parent;
+			return node.block;
+		};
+	}
+
+	/**
+	 * 
+	 * @param newBlock : An already mined block.
+	 * @return : Whether the block passed validation and was added.
+	 * 
+	 * Appends the block, validates it against the last checkpoint
+	 * and persists it if a store is configured. The block's
+	 * transactions are expected to be applied to UTXOs by the
+	 * caller, as addTransaction and BlockPipeline do.
+	 */
+	public static boolean commitBlock(Block newBlock)
+	{
+		state.beginWrite();
+		try
+		{
+			if(!append(newBlock)) return false;
+
+			track(newBlock);
+			return true;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	// Appends, validates and persists a block, taking it back off the chain if it's invalid or can't be stored.
+	private static boolean append(Block newBlock)
+	{
+		if(isTooNew(newBlock))
+		{
+			REJECTED_BLOCKS.inc();
+			Log.warn("block.discarded", "hash", newBlock.hash, "reason", "time_too_new", "timeStamp", newBlock.getTimeStamp());
+			return false;
+		}
+
 		blockchain.add(newBlock);
+
+		boolean valid = false;
+		try
+		{
+			valid = validateIncremental(false);
+		}
+		catch(RuntimeException e)
+		{
+			// Data that trips validation up is as invalid as data that fails it, and must not stay on the chain.
+			Log.warn("block.validation_error", "hash", newBlock.hash, "error", e.toString());
+		}
+
+		if(!valid)
+		{
+			blockchain.remove(blockchain.size() - 1);
+			REJECTED_BLOCKS.inc();
+			Log.warn("block.discarded", "hash", newBlock.hash, "reason", "failed_validation");
+			return false;
+		}
+
+		// A block that can't be stored comes back off the chain too, so connect never leaves it there unapplied.
+		if(store != null)
+		{
+			try
+			{
+				store.append(newBlock);
+			}
+			catch(IOException e)
+			{
+				blockchain.remove(blockchain.size() - 1);
+				REJECTED_BLOCKS.inc();
+				Log.warn("block.discarded", "hash", newBlock.hash, "reason", "store_failed", "error", e.toString());
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// Adds a block just appended to blockchain to the tree, along with its undo data.
+	private static void track(Block newBlock)
+	{
+		if(blockchain.size() == 1) blockTree.clear();
+		else if(!blockTree.contains(newBlock.previousHash)) rebuildTree();
+
+		BlockTree.Node node = blockTree.add(newBlock);
+		node.undo = BlockUndo.of(newBlock);
+	}
+
+	// Rebuilds the tree from blockchain alone, after the chain was changed behind its back.
+	private static void rebuildTree()
+	{
+		blockTree.clear();
+
+		for(int height = 0; height < blockchain.size(); ++height)
+		{
+			Block block = blockchain.get(height);
+			if(block.getTarget() == null) block.setTarget(targetFor(height, blockchain::get));
+			if(height < blockchain.size() - 1) blockTree.add(block);
+		}
+	}
+
+	/**
+	 * 
+	 * @param block : A mined block from elsewhere, e.g. another miner.
+	 * @return : Whether the block was accepted, onto the chain or a side branch.
+	 * 
+	 * Builds on any known block, not just the tip. A block that
+	 * extends the tip is connected straight away. A block on another
+	 * branch is kept, and if that branch now has more work than the
+	 * chain, the chain reorganizes onto it: blocks back to the fork
+	 * are undone and the branch's blocks replayed, touching only the
+	 * outputs those blocks changed.
+	 */
+	public static boolean submitBlock(Block block)
+	{
+		state.beginWrite();
+		try
+		{
+			if(blockTree.contains(block.hash)) return false;
+
+			BlockTree.Node tip = tipNode();
+			BlockTree.Node parent = blockTree.get(block.previousHash);
+
+			if(tip == null || parent == null)
+			{
+				REJECTED_BLOCKS.inc();
+				Log.info("block.discarded", "hash", block.hash, "reason", "unknown_parent", "parent", block.previousHash);
+				return false;
+			}
+
+			// Extending the tip is validated in full by connect, the up front checks are for side branches.
+			if(parent == tip)
+			{
+				block.setTarget(targetFor(tip.height + 1, blockchain::get));
+				BlockTree.Node node = blockTree.add(block);
+				if(connect(node)) return true;
+
+				blockTree.remove(node);
+				return false;
+			}
+
+			Target target = targetFor(parent.height + 1, branch(parent));
+			if(!checkBlock(block, parent.height + 1, branch(parent), target))
+			{
+				REJECTED_BLOCKS.inc();
+				Log.warn("block.discarded", "hash", block.hash, "reason", "invalid");
+				return false;
+			}
+
+			block.setTarget(target);
+			BlockTree.Node node = blockTree.add(block);
+
+			if(node.chainWork.compareTo(tip.chainWork) > 0)
+			{
+				reorganize(node);
+			}
+			else
+			{
+				Log.info("block.side_branch", "hash", block.hash, "height", node.height);
+			}
+
+			return blockTree.contains(block.hash);
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param hash : Hash of a block.
+	 * @return : Whether the block is on the chain or a known side branch.
+	 */
+	public static boolean hasBlock(String hash)
+	{
+		if(state.current().getHeight(hash) >= 0) return true;
+
+		state.beginWrite();
+		try
+		{
+			return blockTree.contains(hash);
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param hash : Hash of a block.
+	 * @return : The block, from the chain or a side branch, or null if it isn't known.
+	 */
+	public static Block findBlock(String hash)
+	{
+		Block block = state.current().getBlock(hash);
+		if(block != null) return block;
+
+		state.beginWrite();
+		try
+		{
+			BlockTree.Node node = blockTree.get(hash);
+			return node == null ? null : node.block;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param genesis : The first block of a chain heard of from another node.
+	 * @return : Whether it's now the first block here.
+	 * 
+	 * Starts an empty chain from another node's genesis block, the
+	 * way a node with the genesis block built in would. Its only
+	 * transaction becomes genesisTransaction.
+	 * 
+	 * Whoever supplies the genesis block decides the whole money
+	 * supply, so only the block pinned by genesisHash is taken. Its
+	 * hash covers the transaction id through the merkle root, and the
+	 * id has to be the transaction's real one, so the pin covers the
+	 * outputs too. Validation never looks at the genesis block, so
+	 * it's checked in full here.
+	 */
+	public static boolean adoptGenesis(Block genesis)
+	{
+		state.beginWrite();
+		try
+		{
+			if(!blockchain.isEmpty() || !"0".equals(genesis.previousHash)) return false;
+
+			if(genesisHash == null || !genesisHash.equals(genesis.hash))
+			{
+				REJECTED_BLOCKS.inc();
+				Log.warn("block.discarded", "hash", genesis.hash, "reason", "unexpected_genesis", "expected", genesisHash);
+				return false;
+			}
+
+			Target target = targetFor(0, blockchain::get);
+			if(genesis.transactions.size() != 1 || !checkBlock(genesis, 0, null, target) || !isGenesisTransaction(genesis.transactions.get(0)))
+			{
+				REJECTED_BLOCKS.inc();
+				Log.warn("block.discarded", "hash", genesis.hash, "reason", "invalid_genesis");
+				return false;
+			}
+
+			genesis.setTarget(target);
+			genesisTransaction = genesis.transactions.get(0);
+			for(TransactionOutput output : genesisTransaction.outputs)
+			{
+				UTXOs.put(output.id, output);
+			}
+
+			if(commitBlock(genesis)) return true;
+
+			UTXOs.clear();
+			genesisTransaction = null;
+			return false;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	// Whether a transaction creates coins the way a genesis transaction does: no inputs, one output paying its value to its recipient.
+	private static boolean isGenesisTransaction(Transaction transaction)
+	{
+		if(transaction.inputs != null || transaction.signature == null || transaction.outputs.size() != 1) return false;
+		if(!transaction.calculateHash().equals(transaction.transactionId)) return false;
+
+		TransactionOutput output = transaction.outputs.get(0);
+		return output.recipient.equals(transaction.recipient) &&
+			   output.value == transaction.value &&
+			   transaction.transactionId.equals(output.parentTransactionId) &&
+			   TransactionOutput.idFor(output.recipient, output.value, output.parentTransactionId).equals(output.id);
+	}
+
+	// The node for the block at the tip of blockchain.
+	private static BlockTree.Node tipNode()
+	{
+		if(blockchain.isEmpty()) return null;
+
+		Block tip = blockchain.get(blockchain.size() - 1);
+		if(!blockTree.contains(tip.hash))
+		{
+			rebuildTree();
+			blockTree.add(tip);
+		}
+
+		return blockTree.get(tip.hash);
+	}
+
+	// The checks that don't depend on the unspent outputs, against the branch below height and the target it calls for.
+	private static boolean checkBlock(Block block, int height, IntFunction<Block> chain, Target target)
+	{
+		return !isTooNew(block) &&
+			   (height == 0 || meetsMedianTimePast(block, height, chain)) &&
+			   block.hash.equals(block.generateHash()) &&
+			   !block.getMerkleTree().hasDuplicates() &&
+			   block.getMerkleTree().getRootHex().equals(block.merkleRoot) &&
+			   target.isMetBy(block.hash) &&
+			   BatchVerifier.verifyAll(block.transactions);
+	}
+
+	// Whether a block's timestamp is at least the median of the blocks before it. Blocks mined within a millisecond share one, so it needn't be later.
+	private static boolean meetsMedianTimePast(Block block, int height, IntFunction<Block> chain)
+	{
+		return block.getTimeStamp() >= DifficultyRetarget.medianTimePast(height, chain);
+	}
+
+	// Whether a block arriving now is dated too far ahead of this node's clock.
+	private static boolean isTooNew(Block block)
+	{
+		return block.getTimeStamp() > System.currentTimeMillis() + DifficultyRetarget.MAX_FUTURE_MILLIS;
+	}
+
+	// Validates a block on top of the tip and applies it to UTXOs.
+	private static boolean connect(BlockTree.Node node)
+	{
+		if(!append(node.block)) return false;
+
+		for(Transaction transaction : node.block.transactions)
+		{
+			UTXOs.applyTransaction(transaction);
+		}
+
+		node.undo = BlockUndo.of(node.block);
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param newTip : Tip of a branch with more work than the chain.
+	 * @return : Whether the chain now ends at newTip.
+	 * 
+	 * If a block on the new branch turns out to be invalid, it and
+	 * everything built on it are dropped and the chain goes back to
+	 * the branch it was on.
+	 */
+	private static boolean reorganize(BlockTree.Node newTip)
+	{
+		BlockTree.Node oldTip = tipNode();
+		BlockTree.Node fork = BlockTree.forkPoint(oldTip, newTip);
+
+		for(BlockTree.Node n = oldTip; n != fork; n = n.parent)
+		{
+			if(n.undo == null)
+			{
+				Log.warn("chain.reorganize_failed", "reason", "no_undo_data", "hash", n.block.hash);
+				return false;
+			}
+		}
+
+		REORGANIZATIONS.inc();
+		Log.info("chain.reorganize", "from", oldTip.height, "to", newTip.height, "fork", fork.height);
+
+		disconnectTo(fork);
+
+		for(BlockTree.Node n : BlockTree.path(fork, newTip))
+		{
+			if(!connect(n))
+			{
+				blockTree.remove(n);
+
+				disconnectTo(fork);
+				for(BlockTree.Node o : BlockTree.path(fork, oldTip)) connect(o);
+
+				UTXOs.fireReorganized();
+				return false;
+			}
+		}
+
+		UTXOs.fireReorganized();
+		return true;
+	}
+
+	/*
+	 * Takes blocks off the end of the chain back to the fork point,
+	 * undoing each one on UTXOs, on the checkpoint's copy and in
+	 * the store.
+	 */
+	private static void disconnectTo(BlockTree.Node fork)
+	{
+		int tipHeight = blockchain.size() - 1;
+		boolean rewind = checkpoint != null && checkpoint.height == tipHeight && checkpoint.matches(blockchain);
+
+		UTXOCommitment commitment = rewind ? checkpoint.getCommitment() : null;
+		HashMap<String, TransactionOutput> tempUTXOs = rewind ? checkpoint.takeUTXOs() : null;
+		checkpoint = null;
+
+		while(blockchain.size() - 1 > fork.height)
+		{
+			Block block = blockchain.remove(blockchain.size() - 1);
+			BlockUndo undo = blockTree.get(block.hash).undo;
+
+			undo.undo(UTXOs);
+			if(rewind) undo.undo(tempUTXOs, commitment);
+		}
+
+		if(rewind) checkpoint = new Checkpoint(fork.height, fork.block.hash, tempUTXOs, commitment);
+
+		if(store != null)
+		{
+			try
+			{
+				store.truncate(Math.min(store.size(), fork.height + 1));
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param blockStore : Store holding a previously persisted chain.
+	 * 
+	 * Replaces the in memory chain with the one on disk, rebuilding
+	 * the unspent outputs as it goes. New blocks are then appended
+	 * to the same store.
+	 */
+	public static void load(BlockStore blockStore) throws IOException
+	{
+		state.beginWrite();
+		try
+		{
+			blockchain.clear();
+			UTXOs.clear();
+			checkpoint = null;
+
+			blockTree.clear();
+
+			for(int height = 0; height < blockStore.size(); ++height)
+			{
+				Block block = blockStore.get(height);
+
+				for(Transaction transaction : block.transactions)
+				{
+					UTXOs.applyTransaction(transaction);
+				}
+
+				block.setUTXOCommitment(UTXOs.getCommitmentHex());
+				blockchain.add(block);
+				block.setTarget(targetFor(height, blockchain::get));
+				blockTree.add(block).undo = BlockUndo.of(block);
+			}
+
+			if(!blockchain.isEmpty() && !blockchain.get(0).transactions.isEmpty())
+			{
+				genesisTransaction = blockchain.get(0).transactions.get(0);
+			}
+
+			UTXOs.fireReorganized();
+			store = blockStore;
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param file : Where to write the snapshot.
+	 * 
+	 * Writes the current unspent outputs as of the chain's tip, for
+	 * other nodes to start from with loadSnapshot.
+	 */
+	public static void writeSnapshot(File file) throws IOException
+	{
+		state.beginWrite();
+		try
+		{
+			int height = blockchain.size() - 1;
+			UTXOSnapshot.write(file, height, blockchain.get(height).hash, UTXOs.values());
+		}
+		finally
+		{
+			state.endWrite();
+		}
+	}
+
+	/**
+	 * 
+	 * @param blockStore : Store holding the chain, at least up to the snapshot's height.
+	 * @param file : Snapshot written by writeSnapshot.
+	 * 
+	 * Starts from the snapshot instead of replaying every transaction.
+	 * Blocks up to the snapshot's height are read without being
+	 * replayed or validated, and the checkpoint is set there, so
+	 * any blocks after it are validated as usual before the chain
+	 * is accepted.
+	 */
+	public static void loadSnapshot(BlockStore blockStore, File file) throws IOException
+	{
+		loadSnapshot(blockStore, file, null);
+	}
+
+	/**
+	 * 
+	 * @param blockStore : Store holding the chain, at least up to the snapshot's height.
+	 * @param file : Snapshot written by writeSnapshot.
+	 * @param trustedCommitment : UTXO commitment the snapshot's tip is known to have, or null.
+	 * 
+	 * As loadSnapshot, but refuses a snapshot whose outputs don't
+	 * match a commitment obtained elsewhere, e.g. from another node.
+	 */
+	public static void loadSnapshot(BlockStore blockStore, File file, String trustedCommitment) throws IOException
+	{
+		state.beginWrite();
+		try
+		{
+			UTXOSnapshot snapshot = UTXOSnapshot.read(file);
+
+			if(trustedCommitment != null && !trustedCommitment.equals(snapshot.commitment.toHex()))
+			{
+				throw new IOException("Snapshot commitment " + snapshot.commitment + " doesn't match " + trustedCommitment);
+			}
+
+			if(snapshot.height >= blockStore.size() || !blockStore.get(snapshot.height).hash.equals(snapshot.tipHash))
+			{
+				throw new IOException("Snapshot tip " + snapshot.tipHash + " isn't in the block store.");
+			}
+
+			blockchain.clear();
+			UTXOs.clear();
+
+			blockTree.clear();
+
+			// Blocks up to the snapshot were never connected here, so they have no undo data.
+			for(int height = 0; height < blockStore.size(); ++height)
+			{
+				blockchain.add(blockStore.get(height));
+				blockchain.get(height).setTarget(targetFor(height, blockchain::get));
+				blockTree.add(blockchain.get(height));
+			}
+
+			if(!blockchain.get(0).transactions.isEmpty())
+			{
+				genesisTransaction = blockchain.get(0).transactions.get(0);
+			}
+
+			for(TransactionOutput output : snapshot.outputs.values())
+			{
+				UTXOs.put(output.id, output);
+			}
+
+			blockchain.get(snapshot.height).setUTXOCommitment(snapshot.commitment.toHex());
+			checkpoint = new Checkpoint(snapshot.height, snapshot.tipHash, new HashMap<>(snapshot.outputs), snapshot.commitment);
+
+			// Catches the live set up on anything stored past the snapshot.
+			for(Block block : blockchain.subList(snapshot.height + 1, blockchain.size()))
+			{
+				for(Transaction transaction : block.transactions)
+				{
+					UTXOs.applyTransaction(transaction);
+				}
+
+				blockTree.get(block.hash).undo = BlockUndo.of(block);
+			}
+
+			if(snapshot.height + 1 < blockchain.size() && !validateIncremental(false))
+			{
+				throw new IOException("Blocks after the snapshot failed validation.");
+			}
+
+			// The live set and the validated one were built separately, so they should agree.
+			if(!UTXOs.getCommitment().equals(checkpoint.getCommitment()))
+			{
+				throw new IOException("Unspent outputs don't match the chain after loading the snapshot.");
+			}
+
+			UTXOs.fireReorganized();
+			store = blockStore;
+		}
+		finally
+		{
+			state.endWrite();
+		}
 	}
 }
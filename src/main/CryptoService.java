@@ -0,0 +1,198 @@
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.function.Supplier;
+
+/*
+ * 18 October 2026
+ * CryptoService.java
+ *
+ * SHA-256 and ECDSA for the whole chain. Each thread gets its
+ * own engines the first time it needs them and reuses them
+ * from then on, so provider lookup happens once per thread
+ * instead of on every hash and signature. Failures surface as
+ * CryptoExceptions.
+ */
+
+public class CryptoService
+{
+	private static final ThreadLocal<MessageDigest> SHA256 =
+		engine(() -> MessageDigest.getInstance("SHA-256"));
+
+	private static final ThreadLocal<Signature> ECDSA =
+		engine(() -> Signature.getInstance("ECDSA", "BC"));
+
+	private static final ThreadLocal<KeyFactory> KEYS =
+		engine(() -> KeyFactory.getInstance("ECDSA", "BC"));
+
+	private static final Metrics.Counter VALID_SIGNATURES = Metrics.counter("colechain_signature_verifications_total",
+		"ECDSA signatures checked, by result.", "result", "valid");
+
+	private static final Metrics.Counter INVALID_SIGNATURES = Metrics.counter("colechain_signature_verifications_total",
+		"ECDSA signatures checked, by result.", "result", "invalid");
+
+	// Lets the engine lookups throw their checked exceptions.
+	private interface EngineFactory<T>
+	{
+		T create() throws GeneralSecurityException;
+	}
+
+	private static <T> ThreadLocal<T> engine(EngineFactory<T> factory)
+	{
+		Supplier<T> supplier = () -> {
+			try
+			{
+				return factory.create();
+			}
+			catch(GeneralSecurityException e)
+			{
+				throw new CryptoException("Unable to create crypto engine", e);
+			}
+		};
+
+		return ThreadLocal.withInitial(supplier);
+	}
+
+	/**
+	 *
+	 * @return : This thread's SHA-256 engine, reset and ready to use.
+	 *
+	 * For callers that feed data in pieces. Don't hand it to other threads.
+	 */
+	public static MessageDigest sha256Digest()
+	{
+		MessageDigest md = SHA256.get();
+		md.reset();
+		return md;
+	}
+
+	/**
+	 *
+	 * @param input : Bytes to hash.
+	 * @return : The 32 byte SHA-256 digest.
+	 */
+	public static byte[] sha256(byte[] input)
+	{
+		return sha256Digest().digest(input);
+	}
+
+	/**
+	 *
+	 * @param privatekey : Key to sign with.
+	 * @param data : Bytes to sign.
+	 * @return : The ECDSA signature.
+	 */
+	public static byte[] sign(PrivateKey privatekey, byte[] data)
+	{
+		try
+		{
+			Signature dsa = ECDSA.get();
+			dsa.initSign(privatekey);
+			dsa.update(data);
+			return dsa.sign();
+		}
+		catch(GeneralSecurityException e)
+		{
+			throw new CryptoException("Unable to sign data", e);
+		}
+	}
+
+	/**
+	 *
+	 * @param publickey : Key the signature should belong to.
+	 * @param data : Bytes that were signed.
+	 * @param signature : Signature to check.
+	 * @return : Whether the signature is valid.
+	 *
+	 * A malformed signature is just invalid. Only a broken key or
+	 * engine throws.
+	 */
+	public static boolean verify(PublicKey publickey, byte[] data, byte[] signature)
+	{
+		if(signature == null) return false;
+
+		return verify(verifier(publickey), data, signature);
+	}
+
+	/**
+	 *
+	 * @param publickey : Key the signatures should belong to.
+	 * @return : This thread's ECDSA engine, set up to verify for that key.
+	 *
+	 * Parses the key once so several signatures by the same sender
+	 * can be checked against it. Don't hand it to other threads.
+	 */
+	public static Signature verifier(PublicKey publickey)
+	{
+		Signature dsa = ECDSA.get();
+
+		try
+		{
+			dsa.initVerify(publickey);
+		}
+		catch(GeneralSecurityException e)
+		{
+			throw new CryptoException("Unable to verify with key", e);
+		}
+
+		return dsa;
+	}
+
+	/**
+	 *
+	 * @param verifier : Engine from verifier(PublicKey).
+	 * @param data : Bytes that were signed.
+	 * @param signature : Signature to check.
+	 * @return : Whether the signature is valid.
+	 *
+	 * Leaves the engine ready for the next signature by the same key.
+	 * A malformed signature is just invalid, but the engine should be
+	 * set up again through verifier(PublicKey) before reusing it.
+	 */
+	public static boolean verify(Signature verifier, byte[] data, byte[] signature)
+	{
+		boolean valid = false;
+
+		try
+		{
+			if(signature != null)
+			{
+				verifier.update(data);
+				valid = verifier.verify(signature);
+			}
+		}
+		catch(GeneralSecurityException e)
+		{
+			valid = false;
+		}
+
+		(valid ? VALID_SIGNATURES : INVALID_SIGNATURES).inc();
+		return valid;
+	}
+
+	/**
+	 *
+	 * @return : This thread's ECDSA key factory.
+	 */
+	public static KeyFactory keyFactory()
+	{
+		return KEYS.get();
+	}
+
+	/*
+	 * Thrown when a hash or signature can't be computed at all,
+	 * as opposed to a signature that simply doesn't verify.
+	 */
+	public static class CryptoException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public CryptoException(String message, Throwable cause)
+		{
+			super(message, cause);
+		}
+	}
+}
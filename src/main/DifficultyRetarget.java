@@ -0,0 +1,135 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/*
+ * 18 October 2026
+ * DifficultyRetarget.java
+ *
+ * Keeps blocks coming at a steady rate as hash power comes and
+ * goes. Every interval blocks the target is scaled by how long
+ * the last interval blocks actually took, going by their
+ * timestamps, against how long they should have. Blocks that came
+ * too fast make the target harder and slow ones make it easier.
+ *
+ * One adjustment moves the target by at most a factor of four
+ * either way, so a few odd timestamps can't swing it wildly, and
+ * it never gets easier than the first block's target.
+ *
+ * Timestamps are whatever the miner wrote, so the chain bounds them
+ * (see medianTimePast and MAX_FUTURE_MILLIS): a block can't be
+ * older than the median of the blocks before it, or too far ahead
+ * of the clock of the node checking it.
+ */
+
+public class DifficultyRetarget
+{
+	// Most the target moves by in one adjustment.
+	private static final int MAX_FACTOR = 4;
+
+	// Blocks the median time past is taken over.
+	public static final int MEDIAN_SPAN = 11;
+
+	// How far ahead of a node's clock a new block's timestamp may be.
+	public static final long MAX_FUTURE_MILLIS = 2 * 60 * 60 * 1000L;
+
+	// How long a block should take to mine.
+	private final long blockMillis;
+
+	// Blocks between adjustments.
+	private final int interval;
+
+	/**
+	 *
+	 * @param blockMillis : How long a block should take to mine.
+	 * @param interval : Blocks between adjustments, at least 2.
+	 */
+	public DifficultyRetarget(long blockMillis, int interval)
+	{
+		if(blockMillis <= 0) throw new IllegalArgumentException("Block time must be positive.");
+		if(interval < 2) throw new IllegalArgumentException("Retarget interval must be at least 2 blocks.");
+
+		this.blockMillis = blockMillis;
+		this.interval = interval;
+	}
+
+	/**
+	 *
+	 * @return : A retarget that never adjusts, so every block keeps the first block's target.
+	 */
+	public static DifficultyRetarget fixed()
+	{
+		return new DifficultyRetarget(1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 *
+	 * @param height : Height of the block being mined or checked, at least 1.
+	 * @param chain : The blocks before it on its branch by height, each with its target set.
+	 * @return : The target the block has to meet.
+	 *
+	 * Only depends on blocks before height, so every node works out
+	 * the same target for the same branch.
+	 */
+	public Target next(int height, IntFunction<Block> chain)
+	{
+		return next(height, chain, h -> chain.apply(h).getTarget());
+	}
+
+	/**
+	 *
+	 * @param height : Height of the block being mined or checked, at least 1.
+	 * @param chain : The blocks before it on its branch by height.
+	 * @param targets : The target of each of those blocks by height.
+	 * @return : The target the block has to meet.
+	 *
+	 * For working out targets without setting them on the blocks.
+	 */
+	public Target next(int height, IntFunction<Block> chain, IntFunction<Target> targets)
+	{
+		Block parent = chain.apply(height - 1);
+		Target previous = targets.apply(height - 1);
+		if(!adjustsAt(height)) return previous;
+
+		// The window is the last interval blocks, so interval - 1 gaps between them.
+		long expected = (interval - 1) * blockMillis;
+		long actual = parent.getTimeStamp() - chain.apply(height - interval).getTimeStamp();
+		actual = Math.max(expected / MAX_FACTOR, Math.min(expected * MAX_FACTOR, actual));
+
+		return previous.scale(actual, expected).atMost(targets.apply(0));
+	}
+
+	/**
+	 *
+	 * @param height : Height of the block being checked, at least 1.
+	 * @param chain : The blocks before it on its branch by height.
+	 * @return : Median timestamp of the last MEDIAN_SPAN blocks before height, or fewer near genesis.
+	 *
+	 * One miner's timestamp can't move the median much, which is what
+	 * makes it a safe lower bound for the next block's.
+	 */
+	public static long medianTimePast(int height, IntFunction<Block> chain)
+	{
+		int count = Math.min(MEDIAN_SPAN, height);
+		long[] times = new long[count];
+		for(int i = 0; i < count; ++i) times[i] = chain.apply(height - 1 - i).getTimeStamp();
+
+		Arrays.sort(times);
+		return times[count / 2];
+	}
+
+	// Whether the target can change at this height.
+	public boolean adjustsAt(int height)
+	{
+		return height > 0 && height % interval == 0;
+	}
+
+	public long getBlockMillis()
+	{
+		return blockMillis;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+}
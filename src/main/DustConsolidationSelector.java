@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+
+/*
+ * 18 October 2026
+ * DustConsolidationSelector.java
+ *
+ * Covers the target with another selector, then sweeps in the
+ * wallet's smallest outputs as extra inputs so they come back as
+ * one change output. The payment gets a little bigger, but the
+ * wallet and the chain carry fewer tiny outputs from then on.
+ * Best used when the chain is quiet.
+ */
+
+public class DustConsolidationSelector implements CoinSelector
+{
+	// Outputs below this many base units count as dust.
+	private final long dustThreshold;
+
+	// Most inputs a consolidating transaction may have in total.
+	private final int maxInputs;
+
+	// Picks the outputs that actually pay for the transaction.
+	private final CoinSelector payment;
+
+	/**
+	 *
+	 * @param dustThreshold : Outputs below this value, in base units, are swept in.
+	 * @param maxInputs : Most inputs the transaction may end up with.
+	 */
+	public DustConsolidationSelector(long dustThreshold, int maxInputs)
+	{
+		this(dustThreshold, maxInputs, new LargestFirstSelector());
+	}
+
+	public DustConsolidationSelector(long dustThreshold, int maxInputs, CoinSelector payment)
+	{
+		this.dustThreshold = dustThreshold;
+		this.maxInputs = maxInputs;
+		this.payment = payment;
+	}
+
+	@Override
+	public List<TransactionOutput> select(NavigableSet<TransactionOutput> available, long target)
+	{
+		List<TransactionOutput> paid = payment.select(available, target);
+		if(paid == null) return null;
+
+		ArrayList<TransactionOutput> selected = new ArrayList<>(paid);
+
+		HashSet<TransactionOutput> chosen = new HashSet<>(selected);
+
+		// Smallest first, so the worst dust goes before the inputs run out.
+		for(TransactionOutput output : available)
+		{
+			if(selected.size() >= maxInputs || output.value >= dustThreshold) break;
+
+			if(chosen.add(output)) selected.add(output);
+		}
+
+		return selected;
+	}
+}
@@ -0,0 +1,198 @@
+import java.util.function.LongPredicate;
+
+/*
+ * 18 October 2026
+ * HashIndex.java
+ *
+ * Maps hashes to numbers, e.g. a block hash to its height, in two
+ * longs per entry. The key is the first 64 bits of the hash and
+ * both live side by side in one long array, so there's no object
+ * per entry for the garbage collector to trace and tens of millions
+ * of entries fit in a few hundred megabytes.
+ *
+ * Only part of each hash is kept, so two hashes can share a key and
+ * a lookup hands every candidate to the caller to check against the
+ * real data. That also makes entries that went out of date, e.g.
+ * for a block a reorganization took off the chain, harmless: the
+ * check rejects them.
+ *
+ * Entries are only ever added, never moved or removed, and the
+ * array is swapped for a bigger copy when it fills up. So one thread
+ * can add while others look up without any locking, and a reader
+ * always finds what was added before it started.
+ */
+
+public class HashIndex
+{
+	// Longest the array can get: a key and value per slot.
+	private static final int MAX_SLOTS = 1 << 29;
+
+	// Slot key meaning the slot is free. A hash whose key would be 0 uses 1.
+	private static final long EMPTY = 0;
+
+	// Alternating keys and values.
+	private volatile long[] slots;
+
+	// Entries added. Only touched by the writer.
+	private int size;
+
+	public HashIndex()
+	{
+		slots = new long[2 * 1024];
+	}
+
+	/**
+	 *
+	 * @param hash : A hash, normally 64 hex characters.
+	 * @param value : A non-negative value for it.
+	 * @return : Whether it was added, false if the same entry was already there.
+	 *
+	 * Only one thread may add at a time.
+	 */
+	public boolean add(String hash, long value)
+	{
+		if(value < 0) throw new IllegalArgumentException("Index values must be non-negative.");
+
+		// Keeps at most three quarters of the slots full.
+		if(4L * (size + 1) > 3L * (slots.length / 2)) grow();
+
+		long key = key(hash);
+		long[] table = slots;
+		int mask = table.length / 2 - 1;
+
+		for(int slot = start(key, mask); ; slot = (slot + 1) & mask)
+		{
+			long existing = table[2 * slot];
+
+			if(existing == EMPTY)
+			{
+				/*
+				 * Plain stores, so a reader racing with this one may see the
+				 * key without the value, or neither. That's harmless: entries
+				 * added for a snapshot are published along with it, and a
+				 * lookup hands any other hit to the snapshot's own check,
+				 * which turns down a value it can't vouch for.
+				 */
+				table[2 * slot + 1] = value;
+				table[2 * slot] = key;
+				++size;
+				return true;
+			}
+
+			if(existing == key && table[2 * slot + 1] == value) return false;
+		}
+	}
+
+	/**
+	 *
+	 * @param hash : A hash.
+	 * @param matches : Checks whether a candidate value really belongs to the hash.
+	 * @return : The first candidate that matches, or -1.
+	 */
+	public long find(String hash, LongPredicate matches)
+	{
+		long key = key(hash);
+		long[] table = slots;
+		int mask = table.length / 2 - 1;
+
+		int slot = start(key, mask);
+		for(int probes = 0; probes <= mask; ++probes, slot = (slot + 1) & mask)
+		{
+			long existing = table[2 * slot];
+			if(existing == EMPTY) break;
+
+			long value = table[2 * slot + 1];
+			if(existing == key && matches.test(value)) return value;
+		}
+
+		return -1;
+	}
+
+	// Number of entries added.
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 *
+	 * @param high : e.g. a block height.
+	 * @param low : e.g. a position within the block.
+	 * @return : Both packed into one value for add.
+	 */
+	public static long pack(int high, int low)
+	{
+		return ((long) high << 32) | (low & 0xffffffffL);
+	}
+
+	public static int high(long value)
+	{
+		return (int) (value >>> 32);
+	}
+
+	public static int low(long value)
+	{
+		return (int) value;
+	}
+
+	// Doubles the array. Readers still holding the old one find everything that was in it.
+	private void grow()
+	{
+		long[] old = slots;
+		int oldCount = old.length / 2;
+		if(oldCount >= MAX_SLOTS) throw new IllegalStateException("Hash index is full at " + size + " entries.");
+
+		long[] table = new long[old.length * 2];
+		int mask = table.length / 2 - 1;
+
+		for(int i = 0; i < oldCount; ++i)
+		{
+			long key = old[2 * i];
+			if(key == EMPTY) continue;
+
+			int slot = start(key, mask);
+			while(table[2 * slot] != EMPTY) slot = (slot + 1) & mask;
+
+			table[2 * slot + 1] = old[2 * i + 1];
+			table[2 * slot] = key;
+		}
+
+		slots = table;
+	}
+
+	private static int start(long key, int mask)
+	{
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed >>> 32) & mask;
+	}
+
+	/*
+	 * The first 16 hex digits of the hash. Anything else, e.g. the
+	 * genesis transaction's id of "0", is hashed down to 64 bits.
+	 */
+	static long key(String hash)
+	{
+		long key = 0;
+		boolean hex = hash.length() >= 16;
+
+		for(int i = 0; hex && i < 16; ++i)
+		{
+			int digit = Character.digit(hash.charAt(i), 16);
+			if(digit < 0) hex = false;
+			else key = (key << 4) | digit;
+		}
+
+		if(!hex)
+		{
+			// FNV-1a.
+			key = 0xcbf29ce484222325L;
+			for(int i = 0; i < hash.length(); ++i)
+			{
+				key ^= hash.charAt(i);
+				key *= 0x100000001b3L;
+			}
+		}
+
+		return key == EMPTY ? 1 : key;
+	}
+}
@@ -0,0 +1,107 @@
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/*
+ * 18 October 2026
+ * HeaderHasher.java
+ *
+ * Hashes a block header for many magic numbers without building
+ * a new String per attempt. Produces exactly the same hash as
+ * Block.generateHash, just over bytes instead of Strings.
+ */
+
+public class HeaderHasher
+{
+	// Longest decimal magic number, "-2147483648".
+	private static final int MAX_NONCE_DIGITS = 11;
+
+	// Digest state after absorbing previousHash + timeStamp.
+	private final MessageDigest midstate;
+
+	// Reusable buffer holding the nonce digits followed by the merkle root.
+	private final byte[] buffer;
+
+	// Where the merkle root starts inside the buffer.
+	private final int suffixStart;
+
+	// Raw digest of the last attempt.
+	private final byte[] digest = new byte[32];
+
+	/**
+	 *
+	 * @param previousHash : Hash of the previous block.
+	 * @param timeStamp : Block timestamp.
+	 * @param merkleRoot : Merkle root of the block's transactions.
+	 *
+	 * Serializes the constant parts of the header once.
+	 */
+	public HeaderHasher(String previousHash, long timeStamp, String merkleRoot)
+	{
+		byte[] prefix = (previousHash + Long.toString(timeStamp)).getBytes(StandardCharsets.UTF_8);
+		byte[] suffix = String.valueOf(merkleRoot).getBytes(StandardCharsets.UTF_8);
+
+		// This thread's SHA-256 engine, reused for every header.
+		MessageDigest md = CryptoService.sha256Digest();
+		md.update(prefix);
+		try
+		{
+			midstate = (MessageDigest) md.clone();
+		}
+		catch(CloneNotSupportedException e)
+		{
+			throw new CryptoService.CryptoException("SHA-256 engine can't save a midstate", e);
+		}
+		md.reset();
+
+		buffer = new byte[MAX_NONCE_DIGITS + suffix.length];
+		suffixStart = MAX_NONCE_DIGITS;
+		System.arraycopy(suffix, 0, buffer, suffixStart, suffix.length);
+	}
+
+	/**
+	 *
+	 * @param magicNumber : Magic number to try.
+	 * @return : The raw 32 byte digest. Overwritten by the next call.
+	 *
+	 * Writes the nonce digits in front of the merkle root and
+	 * finishes the hash from the saved midstate.
+	 */
+	public byte[] hash(int magicNumber)
+	{
+		int start = writeDigits(magicNumber);
+
+		try
+		{
+			MessageDigest md = (MessageDigest) midstate.clone();
+			md.update(buffer, start, buffer.length - start);
+			md.digest(digest, 0, digest.length);
+		}
+		catch(CloneNotSupportedException | DigestException e)
+		{
+			throw new CryptoService.CryptoException("Unable to hash block header", e);
+		}
+
+		return digest;
+	}
+
+	// Writes Integer.toString(value) so it ends right before the suffix.
+	private int writeDigits(int value)
+	{
+		int pos = suffixStart;
+		long v = value;
+		boolean negative = v < 0;
+		if(negative) v = -v;
+
+		do
+		{
+			buffer[--pos] = (byte) ('0' + (v % 10));
+			v /= 10;
+		}
+		while(v != 0);
+
+		if(negative) buffer[--pos] = '-';
+
+		return pos;
+	}
+}
@@ -0,0 +1,31 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+
+/*
+ * 18 October 2026
+ * LargestFirstSelector.java
+ *
+ * Spends the wallet's biggest outputs until the target is covered,
+ * which uses as few inputs as any greedy choice can.
+ */
+
+public class LargestFirstSelector implements CoinSelector
+{
+	@Override
+	public List<TransactionOutput> select(NavigableSet<TransactionOutput> available, long target)
+	{
+		ArrayList<TransactionOutput> selected = new ArrayList<>();
+		long total = 0;
+
+		for(TransactionOutput output : available.descendingSet())
+		{
+			if(total >= target) break;
+
+			selected.add(output);
+			total += output.value;
+		}
+
+		return total >= target ? selected : null;
+	}
+}
@@ -0,0 +1,134 @@
+import java.io.PrintStream;
+import java.time.Instant;
+
+/*
+ * 18 October 2026
+ * Log.java
+ *
+ * One line per event, as an event name followed by key=value
+ * fields, so the output can be grepped or fed to a log collector:
+ *
+ *   2026-10-18T09:30:00.123Z INFO  block.mined thread=main hash=000f3a... hashesPerSecond=612345
+ *
+ * Events below the current level are dropped before anything is
+ * formatted, so a disabled debug line costs one comparison. The
+ * level starts from the colechain.log system property, INFO if
+ * it isn't set.
+ */
+
+public final class Log
+{
+	public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+	private static volatile Level level = parse(System.getProperty("colechain.log"), Level.INFO);
+
+	private static volatile PrintStream out = System.out;
+
+	private Log()
+	{
+	}
+
+	public static Level getLevel()
+	{
+		return level;
+	}
+
+	public static void setLevel(Level newLevel)
+	{
+		level = newLevel;
+	}
+
+	// Where lines go, standard out unless changed.
+	public static void setOutput(PrintStream stream)
+	{
+		out = stream;
+	}
+
+	public static boolean isEnabled(Level at)
+	{
+		return at != Level.OFF && at.compareTo(level) >= 0;
+	}
+
+	/**
+	 *
+	 * @param event : Dotted event name, e.g. "block.mined".
+	 * @param fields : Alternating keys and values.
+	 */
+	public static void debug(String event, Object... fields)
+	{
+		log(Level.DEBUG, event, fields);
+	}
+
+	public static void info(String event, Object... fields)
+	{
+		log(Level.INFO, event, fields);
+	}
+
+	public static void warn(String event, Object... fields)
+	{
+		log(Level.WARN, event, fields);
+	}
+
+	public static void error(String event, Object... fields)
+	{
+		log(Level.ERROR, event, fields);
+	}
+
+	private static void log(Level at, String event, Object[] fields)
+	{
+		if(!isEnabled(at)) return;
+
+		StringBuilder line = new StringBuilder(96);
+		line.append(Instant.now()).append(' ');
+
+		String name = at.name();
+		line.append(name);
+		for(int pad = name.length(); pad < 6; ++pad) line.append(' ');
+
+		line.append(event).append(" thread=").append(Thread.currentThread().getName());
+
+		for(int i = 0; i + 1 < fields.length; i += 2)
+		{
+			line.append(' ').append(fields[i]).append('=');
+			appendValue(line, fields[i + 1]);
+		}
+
+		// println locks the stream, so lines from different threads don't interleave.
+		out.println(line);
+	}
+
+	// Quotes values that would otherwise break the key=value format.
+	private static void appendValue(StringBuilder line, Object value)
+	{
+		String text = String.valueOf(value);
+		boolean plain = !text.isEmpty();
+
+		for(int i = 0; plain && i < text.length(); ++i)
+		{
+			char c = text.charAt(i);
+			plain = c > ' ' && c != '"' && c != '=';
+		}
+
+		if(plain)
+		{
+			line.append(text);
+			return;
+		}
+
+		line.append('"').append(text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+	}
+
+	private static Level parse(String name, Level fallback)
+	{
+		if(name == null) return fallback;
+
+		try
+		{
+			return Level.valueOf(name.trim().toUpperCase());
+		}
+		catch(IllegalArgumentException e)
+		{
+			return fallback;
+		}
+	}
+}
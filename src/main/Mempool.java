@@ -0,0 +1,290 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * 18 October 2026
+ * Mempool.java
+ *
+ * Pool of signed transactions waiting to be put in a block.
+ *
+ * Any number of threads can submit at once. Signatures are
+ * checked on a separate pool of verifier threads, then each
+ * transaction claims the outputs it spends so a second pending
+ * transaction spending the same output is turned away. The miner
+ * takes batches out in priority order.
+ *
+ * Only outputs the chain has unspent can be claimed, and the pool
+ * holds at most capacity transactions, dropping the lowest priority
+ * one to make room, so a peer can't fill it with transactions that
+ * will never go in a block.
+ *
+ * There are no fees on this chain (inputs always equal outputs),
+ * so priority is the amount being sent, larger first, with ties
+ * going to whichever arrived first.
+ */
+
+public class Mempool
+{
+	// A pending transaction and where it sits in the ordering.
+	private static class Entry
+	{
+		final String id;
+		final Transaction transaction;
+		final long arrival;
+
+		Entry(String id, Transaction transaction, long arrival)
+		{
+			this.id = id;
+			this.transaction = transaction;
+			this.arrival = arrival;
+		}
+	}
+
+	// Most transactions held by default.
+	public static final int DEFAULT_CAPACITY = 50_000;
+
+	private static final Comparator<Entry> PRIORITY =
+		Comparator.<Entry>comparingLong(e -> e.transaction.value).reversed().thenComparingLong(e -> e.arrival);
+
+	// Pending transactions keyed by pool id.
+	private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();
+
+	// Output id -> the pending transaction that spends it.
+	private final ConcurrentHashMap<String, Entry> claims = new ConcurrentHashMap<>();
+
+	// Pending transactions in the order the miner should take them.
+	private final ConcurrentSkipListSet<Entry> ordered = new ConcurrentSkipListSet<>(PRIORITY);
+
+	private final AtomicLong arrivals = new AtomicLong();
+
+	// Checks signatures away from the submitting threads.
+	private final ExecutorService verifiers;
+
+	// Most transactions held at once.
+	private final int capacity;
+
+	public Mempool()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 *
+	 * @param verifierThreads : Number of threads checking signatures.
+	 */
+	public Mempool(int verifierThreads)
+	{
+		this(verifierThreads, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 *
+	 * @param verifierThreads : Number of threads checking signatures.
+	 * @param capacity : Most transactions held at once, at least 1.
+	 */
+	public Mempool(int verifierThreads, int capacity)
+	{
+		if(capacity < 1) throw new IllegalArgumentException("Mempool capacity must be at least 1.");
+		this.capacity = capacity;
+
+		AtomicInteger count = new AtomicInteger();
+		verifiers = Executors.newFixedThreadPool(verifierThreads, r -> {
+			Thread t = new Thread(r, "mempool-verifier-" + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 *
+	 * @param transaction : A signed transaction.
+	 * @return : Completes with whether the transaction was accepted into the pool.
+	 *
+	 * Returns straight away, the signature check and double spend
+	 * check happen on a verifier thread.
+	 */
+	public CompletableFuture<Boolean> submit(Transaction transaction)
+	{
+		// Assembly generates the id and outputs, so a transaction that already has them can't go in a block.
+		if(transaction == null || transaction.signature == null || transaction.inputs == null ||
+		   transaction.transactionId != null || !transaction.outputs.isEmpty())
+		{
+			Transaction.rejected("malformed");
+			return CompletableFuture.completedFuture(false);
+		}
+
+		return CompletableFuture.supplyAsync(() -> {
+			if(!transaction.verifySignature())
+			{
+				Transaction.rejected("bad_signature");
+				Log.info("mempool.rejected", "reason", "bad_signature");
+				return false;
+			}
+			return admit(transaction);
+		}, verifiers);
+	}
+
+	// Claims the transaction's inputs and queues it, or backs out on a conflict. Makes room if the pool is full.
+	private boolean admit(Transaction transaction)
+	{
+		String id = poolId(transaction);
+		Entry entry = new Entry(id, transaction, arrivals.getAndIncrement());
+
+		if(pending.putIfAbsent(id, entry) != null)
+		{
+			Transaction.rejected("duplicate");
+			Log.debug("mempool.rejected", "reason", "duplicate", "id", id);
+			return false;
+		}
+
+		ChainState.Snapshot chain = ColeChain.state.current();
+		ArrayList<String> claimed = new ArrayList<>();
+		for(TransactionInput input : transaction.inputs)
+		{
+			// Outputs the chain doesn't have unspent can't be spent, and would only sit in the pool.
+			TransactionOutput output = chain.getOutput(input.transactionOutputId);
+			if(output == null)
+			{
+				backOut(entry, claimed);
+				Transaction.rejected("missing_input");
+				Log.info("mempool.rejected", "reason", "missing_input", "output", input.transactionOutputId);
+				return false;
+			}
+
+			// Only the key an output was paid to may spend it, whoever else signs for it.
+			if(!output.isMine(transaction.sender))
+			{
+				backOut(entry, claimed);
+				Transaction.rejected("not_owner");
+				Log.info("mempool.rejected", "reason", "not_owner", "output", input.transactionOutputId);
+				return false;
+			}
+
+			if(claims.putIfAbsent(input.transactionOutputId, entry) != null)
+			{
+				backOut(entry, claimed);
+				Transaction.rejected("double_spend");
+				Log.info("mempool.rejected", "reason", "double_spend", "output", input.transactionOutputId);
+				return false;
+			}
+
+			claimed.add(input.transactionOutputId);
+		}
+
+		ordered.add(entry);
+		return makeRoom(entry);
+	}
+
+	/*
+	 * Drops the lowest priority transactions while the pool is over
+	 * capacity. Each is taken off the end of ordered atomically, so
+	 * threads admitting at once never drop the same one twice.
+	 * Returns whether the entry just admitted survived.
+	 */
+	private boolean makeRoom(Entry admitted)
+	{
+		boolean kept = true;
+
+		while(pending.size() > capacity)
+		{
+			Entry lowest = ordered.pollLast();
+			if(lowest == null) break;
+
+			ArrayList<String> inputs = new ArrayList<>();
+			for(TransactionInput input : lowest.transaction.inputs) inputs.add(input.transactionOutputId);
+			backOut(lowest, inputs);
+
+			if(lowest == admitted)
+			{
+				kept = false;
+				Transaction.rejected("pool_full");
+				Log.info("mempool.rejected", "reason", "pool_full", "id", lowest.id);
+			}
+			else
+			{
+				Log.info("mempool.evicted", "id", lowest.id, "value", lowest.transaction.value);
+			}
+		}
+
+		return kept;
+	}
+
+	// Undoes a partly admitted entry: frees the outputs it claimed and drops it from pending.
+	private void backOut(Entry entry, List<String> claimed)
+	{
+		for(String outputId : claimed) claims.remove(outputId, entry);
+		pending.remove(entry.id, entry);
+	}
+
+	/**
+	 *
+	 * @param max : Most transactions to take.
+	 * @return : Up to max transactions, highest priority first.
+	 *
+	 * Removes the transactions from the pool and frees the outputs
+	 * they claimed. From here on the chain itself stops them being
+	 * spent twice.
+	 */
+	public ArrayList<Transaction> take(int max)
+	{
+		ArrayList<Transaction> batch = new ArrayList<>();
+
+		while(batch.size() < max)
+		{
+			Entry entry = ordered.pollFirst();
+			if(entry == null) break;
+
+			pending.remove(entry.id, entry);
+			for(TransactionInput input : entry.transaction.inputs)
+			{
+				claims.remove(input.transactionOutputId, entry);
+			}
+
+			batch.add(entry.transaction);
+		}
+
+		return batch;
+	}
+
+	/**
+	 *
+	 * @param outputId : Id of an unspent output.
+	 * @return : Whether a pending transaction already spends it.
+	 */
+	public boolean isClaimed(String outputId)
+	{
+		return claims.containsKey(outputId);
+	}
+
+	public int size()
+	{
+		return pending.size();
+	}
+
+	// Stops the verifier threads.
+	public void shutdown()
+	{
+		verifiers.shutdownNow();
+	}
+
+	/*
+	 * Pending transactions don't have an id set until they're
+	 * processed into a block, but it's already fixed by the signed
+	 * payload and the signature, so it's used in the pool and between
+	 * peers. It covers the inputs, so a copy spending different
+	 * outputs gets a different id rather than taking the real
+	 * transaction's.
+	 */
+	static String poolId(Transaction transaction)
+	{
+		return transaction.calculateHash();
+	}
+}
@@ -0,0 +1,243 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+ * 18 October 2026
+ * MerkleTree.java
+ *
+ * A binary hash tree over a block's transaction ids.
+ *
+ * Leaves are SHA256(0x00 + id) and inner nodes are
+ * SHA256(0x01 + left + right), with the last node of an odd
+ * sized level paired with itself. That pairing means a list of ids
+ * and the same list with its tail repeated share a root, so blocks
+ * holding an id twice have to be turned away by whoever checks
+ * them (see hasDuplicates). Every level is kept, so
+ * appending a transaction only rehashes the path from its leaf
+ * to the root, and proving a transaction is in the block only
+ * needs one sibling hash per level.
+ */
+
+public class MerkleTree
+{
+	// Levels at or above this size are hashed in parallel.
+	private static final int PARALLEL_THRESHOLD = 4096;
+
+	// Leaf positions are ints, so no tree is deeper than this.
+	private static final int MAX_DEPTH = 31;
+
+	private static final int HASH_LENGTH = 32;
+
+	// levels.get(0) holds the leaves, the last level holds the root.
+	private final ArrayList<ArrayList<byte[]>> levels = new ArrayList<>();
+
+	// Transaction id -> leaf position.
+	private final HashMap<String, Integer> positions = new HashMap<>();
+
+	public MerkleTree()
+	{
+		levels.add(new ArrayList<>());
+	}
+
+	/**
+	 *
+	 * @param transactionIds : Ids of the transactions, in block order.
+	 * @return : A tree over all of them.
+	 *
+	 * Builds every level in one pass, hashing large levels in parallel.
+	 */
+	public static MerkleTree build(List<String> transactionIds)
+	{
+		MerkleTree tree = new MerkleTree();
+		int count = transactionIds.size();
+
+		byte[][] leaves = new byte[count][];
+		range(count).forEach(i -> leaves[i] = leafHash(transactionIds.get(i)));
+
+		for(int i = 0; i < count; ++i) tree.positions.put(transactionIds.get(i), i);
+
+		ArrayList<byte[]> level = new ArrayList<>(Arrays.asList(leaves));
+		tree.levels.set(0, level);
+
+		while(level.size() > 1)
+		{
+			ArrayList<byte[]> below = level;
+			byte[][] parents = new byte[(below.size() + 1) / 2][];
+			range(parents.length).forEach(p -> parents[p] = parentOf(below, p));
+
+			level = new ArrayList<>(Arrays.asList(parents));
+			tree.levels.add(level);
+		}
+
+		return tree;
+	}
+
+	// Runs in parallel once there's enough work to go around.
+	private static IntStream range(int count)
+	{
+		IntStream range = IntStream.range(0, count);
+		return count >= PARALLEL_THRESHOLD ? range.parallel() : range;
+	}
+
+	/**
+	 *
+	 * @param transactionId : Id of the transaction being added to the block.
+	 *
+	 * Adds a leaf and rehashes the path from it to the root.
+	 */
+	public void append(String transactionId)
+	{
+		ArrayList<byte[]> leaves = levels.get(0);
+		positions.put(transactionId, leaves.size());
+		leaves.add(leafHash(transactionId));
+
+		int index = leaves.size() - 1;
+		for(int l = 0; levels.get(l).size() > 1; ++l)
+		{
+			if(l + 1 == levels.size()) levels.add(new ArrayList<>());
+
+			int parent = index / 2;
+			byte[] hash = parentOf(levels.get(l), parent);
+
+			ArrayList<byte[]> above = levels.get(l + 1);
+			if(parent < above.size()) above.set(parent, hash);
+			else above.add(hash);
+
+			index = parent;
+		}
+	}
+
+	public int size()
+	{
+		return levels.get(0).size();
+	}
+
+	/**
+	 *
+	 * @return : Whether any transaction id appears more than once.
+	 */
+	public boolean hasDuplicates()
+	{
+		return positions.size() != size();
+	}
+
+	/**
+	 *
+	 * @return : The raw root hash, or null for an empty tree.
+	 */
+	public byte[] getRoot()
+	{
+		ArrayList<byte[]> top = levels.get(levels.size() - 1);
+		return top.isEmpty() ? null : top.get(0).clone();
+	}
+
+	/**
+	 *
+	 * @return : The root as a hex string, or "" for an empty tree.
+	 */
+	public String getRootHex()
+	{
+		byte[] root = getRoot();
+		return root == null ? "" : StringTools.toHex(root);
+	}
+
+	/**
+	 *
+	 * @param transactionId : Id of a transaction in the tree.
+	 * @return : Proof that the transaction is in the tree, or null if it isn't.
+	 */
+	public Proof getProof(String transactionId)
+	{
+		Integer index = positions.get(transactionId);
+		if(index == null) return null;
+
+		byte[][] siblings = new byte[levels.size() - 1][];
+		int i = index;
+		for(int l = 0; l < siblings.length; ++l)
+		{
+			ArrayList<byte[]> level = levels.get(l);
+			int sibling = i ^ 1;
+			siblings[l] = (sibling < level.size() ? level.get(sibling) : level.get(i)).clone();
+			i /= 2;
+		}
+
+		return new Proof(index, siblings);
+	}
+
+	/**
+	 *
+	 * @param transactionId : Id of the transaction being checked.
+	 * @param proof : Proof handed out by the block's tree.
+	 * @param merkleRoot : Merkle root recorded on the block.
+	 * @return : Whether the proof ties the transaction to the root.
+	 *
+	 * Needs nothing from the block but its root, which is what lets
+	 * a light client check a transaction without the whole block.
+	 * A tree has fewer than 2^31 leaves, so a proof with more levels
+	 * than that, or an index that doesn't fit in its levels, is
+	 * turned away before any hashing.
+	 */
+	public static boolean verify(String transactionId, Proof proof, String merkleRoot)
+	{
+		if(proof.siblings == null || proof.siblings.length > MAX_DEPTH) return false;
+		if(proof.index < 0 || (proof.index >>> proof.siblings.length) != 0) return false;
+
+		byte[] hash = leafHash(transactionId);
+		int index = proof.index;
+
+		for(byte[] sibling : proof.siblings)
+		{
+			if(sibling == null || sibling.length != HASH_LENGTH) return false;
+			hash = (index & 1) == 0 ? nodeHash(hash, sibling) : nodeHash(sibling, hash);
+			index >>>= 1;
+		}
+
+		return StringTools.toHex(hash).equals(merkleRoot);
+	}
+
+	// Hashes the pair below parent position p, duplicating a lone last node.
+	private static byte[] parentOf(List<byte[]> level, int p)
+	{
+		byte[] left = level.get(2 * p);
+		byte[] right = 2 * p + 1 < level.size() ? level.get(2 * p + 1) : left;
+		return nodeHash(left, right);
+	}
+
+	private static byte[] leafHash(String transactionId)
+	{
+		MessageDigest md = CryptoService.sha256Digest();
+		md.update((byte) 0);
+		md.update(String.valueOf(transactionId).getBytes(StandardCharsets.UTF_8));
+		return md.digest();
+	}
+
+	private static byte[] nodeHash(byte[] left, byte[] right)
+	{
+		MessageDigest md = CryptoService.sha256Digest();
+		md.update((byte) 1);
+		md.update(left);
+		md.update(right);
+		return md.digest();
+	}
+
+	/*
+	 * An inclusion proof: the leaf's position and the sibling
+	 * hash at each level on the way up to the root.
+	 */
+	public static class Proof
+	{
+		public final int index;
+		public final byte[][] siblings;
+
+		public Proof(int index, byte[][] siblings)
+		{
+			this.index = index;
+			this.siblings = siblings;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/*
+ * 18 October 2026
+ * Metrics.java
+ *
+ * Counters, gauges and histograms for the whole node, kept in one
+ * registry and written out in the Prometheus text format.
+ *
+ * Each class registers the metrics it updates as static fields, the
+ * same way it would hold a logger. Registering a name twice returns
+ * the metric already there. Updates only touch LongAdders, so the
+ * mining and verification threads never contend over a metric.
+ *
+ * Names follow the Prometheus conventions: a colechain_ prefix, base
+ * units (seconds), and _total on counters.
+ */
+
+public final class Metrics
+{
+	// Every metric family by name, sorted so scrapes come out in a stable order.
+	private static final ConcurrentSkipListMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+	// Buckets for latencies, in seconds, from 100 microseconds to a minute.
+	public static final double[] LATENCY_BUCKETS =
+		{ 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60 };
+
+	private Metrics()
+	{
+	}
+
+	/**
+	 *
+	 * @param name : Metric name, ending in _total.
+	 * @param help : What it counts.
+	 * @return : The counter.
+	 */
+	public static Counter counter(String name, String help)
+	{
+		return counter(name, help, null, null);
+	}
+
+	/**
+	 *
+	 * @param name : Metric name, ending in _total.
+	 * @param help : What it counts.
+	 * @param label : Label that splits the count, e.g. "reason".
+	 * @param value : This counter's value of the label.
+	 * @return : The counter for that label value.
+	 */
+	public static Counter counter(String name, String help, String label, String value)
+	{
+		return (Counter) family(name, help, "counter").child(label, value, Counter::new);
+	}
+
+	/**
+	 *
+	 * @param name : Metric name.
+	 * @param help : What it measures.
+	 * @param value : Read on every scrape.
+	 */
+	public static void gauge(String name, String help, DoubleSupplier value)
+	{
+		family(name, help, "gauge").child(null, null, () -> new Gauge(value));
+	}
+
+	/**
+	 *
+	 * @param name : Metric name, ending in the unit, e.g. _seconds.
+	 * @param help : What it measures.
+	 * @param buckets : Upper bounds of the buckets, ascending.
+	 * @return : The histogram.
+	 */
+	public static Histogram histogram(String name, String help, double... buckets)
+	{
+		return (Histogram) family(name, help, "histogram").child(null, null, () -> new Histogram(buckets));
+	}
+
+	private static Family family(String name, String help, String type)
+	{
+		Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+		if(!family.type.equals(type))
+		{
+			throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+		}
+		return family;
+	}
+
+	/**
+	 *
+	 * @return : Every metric in the Prometheus text exposition format.
+	 */
+	public static String scrape()
+	{
+		StringBuilder out = new StringBuilder(4096);
+		for(Family family : families.values()) family.write(out);
+		return out.toString();
+	}
+
+	// Formats a sample value the way Prometheus reads it.
+	private static String format(double value)
+	{
+		if(Double.isNaN(value)) return "NaN";
+		if(Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+		if(value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+		return Double.toString(value);
+	}
+
+	// Quotes a label value, escaping what the format requires.
+	private static String quote(String value)
+	{
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+	}
+
+	/*
+	 * Metrics sharing a name, help and type, one per label value.
+	 * Unlabelled metrics have a single child under the empty key.
+	 */
+	private static final class Family
+	{
+		final String name;
+		final String help;
+		final String type;
+
+		// Rendered labels, e.g. reason="double_spend", -> metric.
+		final ConcurrentHashMap<String, Metric> children = new ConcurrentHashMap<>();
+
+		Family(String name, String help, String type)
+		{
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+
+		Metric child(String label, String value, Supplier<Metric> create)
+		{
+			String labels = label == null ? "" : label + "=" + quote(value);
+			return children.computeIfAbsent(labels, l -> create.get());
+		}
+
+		void write(StringBuilder out)
+		{
+			out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+
+			ArrayList<Map.Entry<String, Metric>> sorted = new ArrayList<>(children.entrySet());
+			sorted.sort(Map.Entry.comparingByKey());
+			for(Map.Entry<String, Metric> child : sorted) child.getValue().write(out, name, child.getKey());
+		}
+	}
+
+	private abstract static class Metric
+	{
+		abstract void write(StringBuilder out, String name, String labels);
+
+		static void sample(StringBuilder out, String name, String labels, double value)
+		{
+			out.append(name);
+			if(!labels.isEmpty()) out.append('{').append(labels).append('}');
+			out.append(' ').append(format(value)).append('\n');
+		}
+	}
+
+	// A count that only goes up.
+	public static final class Counter extends Metric
+	{
+		private final LongAdder count = new LongAdder();
+
+		public void inc()
+		{
+			count.increment();
+		}
+
+		public void add(long amount)
+		{
+			count.add(amount);
+		}
+
+		public long get()
+		{
+			return count.sum();
+		}
+
+		@Override
+		void write(StringBuilder out, String name, String labels)
+		{
+			sample(out, name, labels, count.sum());
+		}
+	}
+
+	// A value read off the node whenever it's scraped.
+	private static final class Gauge extends Metric
+	{
+		private final DoubleSupplier value;
+
+		Gauge(DoubleSupplier value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		void write(StringBuilder out, String name, String labels)
+		{
+			sample(out, name, labels, value.getAsDouble());
+		}
+	}
+
+	// Counts observations into buckets by size, e.g. how long each block took to mine.
+	public static final class Histogram extends Metric
+	{
+		private final double[] bounds;
+
+		// Observations that fell in each bucket alone, plus one past the last bound.
+		private final LongAdder[] buckets;
+
+		private final DoubleAdder sum = new DoubleAdder();
+		private final LongAdder count = new LongAdder();
+
+		Histogram(double[] bounds)
+		{
+			this.bounds = bounds.clone();
+			Arrays.sort(this.bounds);
+
+			buckets = new LongAdder[this.bounds.length + 1];
+			for(int i = 0; i < buckets.length; ++i) buckets[i] = new LongAdder();
+		}
+
+		public void observe(double value)
+		{
+			int bucket = Arrays.binarySearch(bounds, value);
+			if(bucket < 0) bucket = -bucket - 1;
+
+			buckets[bucket].increment();
+			sum.add(value);
+			count.increment();
+		}
+
+		/**
+		 *
+		 * @param start : A System.nanoTime() reading.
+		 *
+		 * Observes the seconds since then.
+		 */
+		public void observeSince(long start)
+		{
+			observe((System.nanoTime() - start) / 1e9);
+		}
+
+		public long getCount()
+		{
+			return count.sum();
+		}
+
+		public double getSum()
+		{
+			return sum.sum();
+		}
+
+		@Override
+		void write(StringBuilder out, String name, String labels)
+		{
+			String prefix = labels.isEmpty() ? "" : labels + ",";
+			long cumulative = 0;
+
+			for(int i = 0; i < bounds.length; ++i)
+			{
+				cumulative += buckets[i].sum();
+				sample(out, name + "_bucket", prefix + "le=" + quote(format(bounds[i])), cumulative);
+			}
+
+			cumulative += buckets[bounds.length].sum();
+			sample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+			sample(out, name + "_sum", labels, sum.sum());
+			sample(out, name + "_count", labels, cumulative);
+		}
+	}
+}
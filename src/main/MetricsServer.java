@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * 18 October 2026
+ * MetricsServer.java
+ *
+ * Serves Metrics.scrape() at /metrics for Prometheus, or curl, to
+ * read. Listens on the loopback address only, so nothing outside
+ * the machine can reach it unless it's put behind a proxy.
+ */
+
+public class MetricsServer
+{
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 *
+	 * @param port : Port to listen on, or 0 for any free one.
+	 */
+	public MetricsServer(int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", this::handle);
+
+		// One thread is plenty for a scraper every few seconds.
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "metrics-server");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+	}
+
+	public void start()
+	{
+		server.start();
+		Log.info("metrics.listening", "port", getPort(), "path", "/metrics");
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	// The port actually bound, useful when started on port 0.
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			String method = exchange.getRequestMethod();
+			if(!method.equals("GET") && !method.equals("HEAD"))
+			{
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+
+			if(method.equals("HEAD"))
+			{
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 18 October 2026
+ * Miner.java
+ *
+ * Splits the search for a block's magic number across
+ * several worker threads. Each worker walks its own stride
+ * of the nonce space and every worker stops as soon as one
+ * of them finds a valid hash.
+ */
+
+public class Miner
+{
+	// Number of workers searching in parallel.
+	private final int threads;
+
+	// Worker pool, kept around between blocks.
+	private final ExecutorService pool;
+
+	// Hashes per second achieved by each worker on the last block.
+	private final double[] hashRates;
+
+	private static final Metrics.Counter HASHES =
+		Metrics.counter("colechain_hashes_total", "Block header hashes tried while mining.");
+
+	/**
+	 *
+	 * @param threads : Number of worker threads to mine with.
+	 */
+	public Miner(int threads)
+	{
+		if(threads < 1) throw new IllegalArgumentException("Miner needs at least one thread.");
+
+		this.threads = threads;
+		hashRates = new double[threads];
+
+		AtomicInteger count = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "miner-" + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 *
+	 * @param block : The block being mined. Its merkle root must already be set.
+	 * @param target : Largest hash that counts.
+	 * @return : Whether or not a valid magic number was found.
+	 *
+	 * Worker i tries magic numbers i, i + threads, i + 2*threads...
+	 * The first worker to succeed stores its magic number and hash
+	 * on the block and flags the others to stop.
+	 */
+	public boolean mine(Block block, Target target)
+	{
+		AtomicBoolean found = new AtomicBoolean(false);
+		List<Future<?>> workers = new ArrayList<>();
+
+		for(int i = 0; i < threads; ++i)
+		{
+			final int worker = i;
+			workers.add(pool.submit(() -> search(block, target, worker, found)));
+		}
+
+		// Waits on every worker so hash rates are complete before returning.
+		for(Future<?> f : workers)
+		{
+			try
+			{
+				f.get();
+			}
+			catch(InterruptedException e)
+			{
+				found.set(true);
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			catch(ExecutionException e)
+			{
+				found.set(true);
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		return found.get();
+	}
+
+	// Walks one worker's stride of the nonce space.
+	private void search(Block block, Target target, int worker, AtomicBoolean found)
+	{
+		// Each worker gets its own hasher, they share nothing while searching.
+		HeaderHasher hasher = block.headerHasher();
+		long start = System.nanoTime();
+		long attempts = 0;
+
+		// Covers all 2^32 magic numbers before giving up.
+		for(long n = worker; n <= 0xffffffffL && !found.get(); n += threads)
+		{
+			int magicNumber = (int) n;
+			byte[] digest = hasher.hash(magicNumber);
+			attempts++;
+
+			if(target.isMetBy(digest) && found.compareAndSet(false, true))
+			{
+				block.setMined(magicNumber, StringTools.toHex(digest));
+				break;
+			}
+		}
+
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		hashRates[worker] = attempts * 1e9 / elapsed;
+		HASHES.add(attempts);
+	}
+
+	/**
+	 *
+	 * @return : Hashes per second reached by each worker on the last block.
+	 */
+	public double[] getHashRates()
+	{
+		return hashRates.clone();
+	}
+
+	/**
+	 *
+	 * @return : Combined hashes per second of every worker on the last block.
+	 */
+	public double getTotalHashRate()
+	{
+		double total = 0;
+		for(double rate : hashRates) total += rate;
+		return total;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	// Stops the worker pool.
+	public void shutdown()
+	{
+		pool.shutdownNow();
+	}
+}
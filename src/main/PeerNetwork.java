@@ -0,0 +1,1084 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+ * 18 October 2026
+ * PeerNetwork.java
+ *
+ * Connects this node to others over TCP and gossips blocks and
+ * transactions between them, in the BlockCodec format.
+ *
+ * Nodes announce what they have with INV messages listing hashes,
+ * and a peer asks with GETDATA for just the ones it lacks, so each
+ * block or transaction crosses each link about once. A node that
+ * is behind sends GETBLOCKS with a locator, hashes from its tip back
+ * to genesis at growing gaps, and gets back an INV of the blocks
+ * after the newest one both sides have.
+ *
+ * One selector thread does all the socket work without blocking.
+ * Messages are handled in arrival order on a single worker thread,
+ * the only one here that touches the chain, so a slow block never
+ * holds up the sockets. Each peer's queues are bounded. While too
+ * many of its messages wait for the worker, or too many bytes wait
+ * to be sent to it, the peer isn't read from, so it can't make this
+ * node buffer without limit. Announcements that don't fit are
+ * dropped and the peer catches up through GETBLOCKS. A peer that
+ * stops reading altogether is disconnected.
+ *
+ * Frame:
+ *   length (4), type (1), payload
+ *
+ * Payloads:
+ *   HELLO      magic (4), protocol version (1), chain height (4)
+ *   INV        count (4), then per item: kind (1), hash (32)
+ *   GETDATA    same as INV
+ *   BLOCK      a block
+ *   TX         a transaction
+ *   GETBLOCKS  count (4), locator hashes (32 each), newest first
+ */
+
+public class PeerNetwork
+{
+	// "COLE" in ASCII.
+	private static final int MAGIC = 0x434f4c45;
+	private static final byte PROTOCOL_VERSION = 1;
+
+	// Message types.
+	private static final byte HELLO = 1;
+	private static final byte INV = 2;
+	private static final byte GETDATA = 3;
+	private static final byte BLOCK = 4;
+	private static final byte TX = 5;
+	private static final byte GETBLOCKS = 6;
+
+	private static final String[] TYPE_NAMES = { "unknown", "hello", "inv", "getdata", "block", "tx", "getblocks" };
+
+	// Kinds of inventory item.
+	private static final byte ITEM_BLOCK = 1;
+	private static final byte ITEM_TX = 2;
+
+	// Largest frame accepted, far more than any block here needs.
+	private static final int MAX_FRAME = 16 * 1024 * 1024;
+
+	// Most items in one INV or GETDATA, and most hashes in a locator.
+	private static final int MAX_ITEMS = 1000;
+	private static final int MAX_LOCATOR = 64;
+
+	// Most block hashes sent back for one GETBLOCKS.
+	private static final int MAX_BLOCKS_PER_INV = 500;
+
+	// Messages from one peer waiting for the worker before reading from it pauses.
+	private static final int MAX_PENDING_IN = 64;
+
+	// Bytes waiting to go to one peer before reading from it pauses and announcements to it are dropped.
+	private static final long MAX_QUEUED_OUT = 4L * 1024 * 1024;
+
+	// Bytes waiting to go to one peer before it's disconnected for not reading them.
+	private static final long MAX_QUEUED_OUT_HARD = 4 * MAX_QUEUED_OUT;
+
+	// Hashes remembered per peer as already known to it.
+	private static final int MAX_KNOWN = 10_000;
+
+	// Blocks kept while waiting for their parent.
+	private static final int MAX_ORPHANS = 256;
+
+	// Transactions kept while waiting for the blocks with the outputs they spend.
+	private static final int MAX_ORPHAN_TRANSACTIONS = 1_000;
+
+	// Recent transactions kept to answer GETDATA and to ignore repeats.
+	private static final int MAX_RECENT_TRANSACTIONS = 10_000;
+
+	// How long an item asked of one peer isn't asked of another.
+	private static final long REQUEST_TIMEOUT_MILLIS = 30_000;
+
+	private static final Metrics.Counter[] RECEIVED = new Metrics.Counter[TYPE_NAMES.length];
+	private static final Metrics.Counter[] SENT = new Metrics.Counter[TYPE_NAMES.length];
+	static
+	{
+		for(int type = 0; type < TYPE_NAMES.length; ++type)
+		{
+			RECEIVED[type] = Metrics.counter("colechain_p2p_messages_received_total", "Messages received from peers.", "type", TYPE_NAMES[type]);
+			SENT[type] = Metrics.counter("colechain_p2p_messages_sent_total", "Messages queued for peers.", "type", TYPE_NAMES[type]);
+		}
+	}
+
+	private static final Metrics.Counter DROPPED = Metrics.counter("colechain_p2p_announcements_dropped_total",
+			"Announcements not sent because the peer's queue was full.");
+
+	private final InetSocketAddress address;
+	private final Mempool mempool;
+
+	private Selector selector;
+	private ServerSocketChannel server;
+	private Thread selectorThread;
+	private ExecutorService worker;
+	private volatile boolean running;
+
+	// Work for the selector thread, e.g. opening a connection.
+	private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+	private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+
+	// Items asked of some peer -> when to give up waiting. Worker only.
+	private final HashMap<String, Long> requested = new HashMap<>();
+
+	// Blocks whose parent hasn't arrived, oldest first. Worker only.
+	private final LinkedHashMap<String, Block> orphans = new LinkedHashMap<>();
+
+	// Pool ids of transactions spending outputs the chain doesn't have yet, oldest first. Worker only.
+	private final LinkedHashMap<String, OrphanTransaction> orphanTransactions = new LinkedHashMap<>();
+
+	// Pool ids of recent transactions -> the transaction, least recently used first.
+	private final LinkedHashMap<String, Relayed> recentTransactions = new LinkedHashMap<String, Relayed>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Relayed> eldest)
+		{
+			return size() > MAX_RECENT_TRANSACTIONS;
+		}
+	};
+
+	private final Consumer<Block> onPublished = block -> {
+		announce(ITEM_BLOCK, block.hash, null);
+		if(running) worker.execute(this::retryOrphanTransactions);
+	};
+
+	// A transaction as it's passed on, and the outputs it spends.
+	private static final class Relayed
+	{
+		final byte[] encoded;
+		final String[] inputs;
+
+		Relayed(byte[] encoded, Transaction transaction)
+		{
+			this.encoded = encoded;
+
+			inputs = new String[transaction.inputs == null ? 0 : transaction.inputs.size()];
+			for(int i = 0; i < inputs.length; ++i) inputs[i] = transaction.inputs.get(i).transactionOutputId;
+		}
+	}
+
+	// A transaction from a peer, held until the chain has the outputs it spends.
+	private static final class OrphanTransaction
+	{
+		final Transaction transaction;
+		final Relayed relayed;
+		final Peer from;
+
+		OrphanTransaction(Transaction transaction, Relayed relayed, Peer from)
+		{
+			this.transaction = transaction;
+			this.relayed = relayed;
+			this.from = from;
+		}
+	}
+
+	/*
+	 * A connection to another node. The selector thread owns the
+	 * socket and the read buffer, the worker owns the protocol state.
+	 */
+	private final class Peer
+	{
+		final SocketChannel channel;
+		final String name;
+		SelectionKey key;
+
+		// Bytes read but not yet made into messages. Selector thread only.
+		ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+		// Set once the TCP connection is up. Selector thread only.
+		boolean connected;
+
+		// Frames waiting to be written, and how many bytes are left in them.
+		final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+		final AtomicLong queuedOut = new AtomicLong();
+
+		// Messages handed to the worker and not handled yet.
+		final AtomicInteger pendingIn = new AtomicInteger();
+
+		// Hashes the peer is known to have, oldest first.
+		private final LinkedHashSet<String> known = new LinkedHashSet<>();
+
+		// Our HELLO is queued, so other messages may follow it.
+		volatile boolean greeted;
+
+		// The peer's HELLO has arrived. Worker only.
+		boolean introduced;
+		int height;
+
+		// Items asked of this peer and not received yet. Worker only.
+		final HashSet<String> asked = new HashSet<>();
+
+		// Last block of a full GETBLOCKS answer, after which to ask for more. Worker only.
+		String continueAfter;
+
+		volatile boolean closed;
+
+		Peer(SocketChannel channel, String name)
+		{
+			this.channel = channel;
+			this.name = name;
+		}
+
+		synchronized boolean knows(String hash)
+		{
+			return known.contains(hash);
+		}
+
+		synchronized void remember(String hash)
+		{
+			if(!known.add(hash)) return;
+
+			if(known.size() > MAX_KNOWN)
+			{
+				Iterator<String> oldest = known.iterator();
+				oldest.next();
+				oldest.remove();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param address : Where to listen for other nodes, port 0 for any free one.
+	 * @param mempool : Where transactions heard from peers go.
+	 */
+	public PeerNetwork(InetSocketAddress address, Mempool mempool)
+	{
+		this.address = address;
+		this.mempool = mempool;
+
+		Metrics.gauge("colechain_p2p_peers", "Connected peers.", () -> peers.size());
+	}
+
+	public synchronized void start() throws IOException
+	{
+		if(running) return;
+
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.bind(address);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		worker = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "peer-worker");
+			t.setDaemon(true);
+			return t;
+		});
+
+		running = true;
+		selectorThread = new Thread(this::select, "peer-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+
+		ColeChain.state.addBlockListener(onPublished);
+		Log.info("p2p.listening", "port", getPort());
+	}
+
+	public synchronized void stop()
+	{
+		if(!running) return;
+
+		running = false;
+		ColeChain.state.removeBlockListener(onPublished);
+		selector.wakeup();
+
+		try
+		{
+			selectorThread.join();
+			worker.shutdown();
+			worker.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// The port actually bound, useful when started on port 0.
+	public int getPort()
+	{
+		return server.socket().getLocalPort();
+	}
+
+	public int getPeerCount()
+	{
+		return peers.size();
+	}
+
+	/**
+	 *
+	 * @param host : Another node's host.
+	 * @param port : Its port.
+	 *
+	 * Connects in the background. Failures are logged, not thrown.
+	 */
+	public void connect(String host, int port)
+	{
+		onSelector(() -> {
+			SocketChannel channel = null;
+			try
+			{
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+				Peer peer = new Peer(channel, host + ":" + port);
+				boolean done = channel.connect(new InetSocketAddress(host, port));
+				peer.key = channel.register(selector, done ? 0 : SelectionKey.OP_CONNECT, peer);
+				peers.add(peer);
+				if(done) connected(peer);
+			}
+			catch(IOException e)
+			{
+				Log.warn("p2p.connect_failed", "peer", host + ":" + port, "error", e.getMessage());
+				closeQuietly(channel);
+			}
+		});
+	}
+
+	/**
+	 *
+	 * @param transaction : A transaction made on this node.
+	 * @return : Completes with whether the mempool accepted it. If it did, it's announced to every peer.
+	 */
+	public CompletableFuture<Boolean> submit(Transaction transaction)
+	{
+		if(transaction == null || transaction.signature == null) return mempool.submit(transaction);
+
+		// Encoded now, before a block template can start filling in its ids.
+		String id = Mempool.poolId(transaction);
+		Relayed relayed = new Relayed(BlockCodec.encode(transaction), transaction);
+
+		return mempool.submit(transaction).thenApply(accepted -> {
+			if(accepted) relay(id, relayed, null);
+			return accepted;
+		});
+	}
+
+	/*
+	 * Selector thread.
+	 */
+
+	private void select()
+	{
+		try
+		{
+			while(running)
+			{
+				selector.select(1000);
+
+				Runnable task;
+				while((task = selectorTasks.poll()) != null) task.run();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if(key.isValid() && key.isAcceptable())
+					{
+						accept();
+						continue;
+					}
+
+					Peer peer = (Peer) key.attachment();
+					try
+					{
+						if(key.isValid() && key.isConnectable() && peer.channel.finishConnect()) connected(peer);
+						if(key.isValid() && key.isReadable()) read(peer);
+						if(key.isValid() && key.isWritable()) write(peer);
+					}
+					catch(IOException | RuntimeException e)
+					{
+						close(peer, e.toString());
+					}
+				}
+
+				for(Peer peer : peers)
+				{
+					try
+					{
+						frames(peer);
+						updateInterest(peer);
+					}
+					catch(IOException | RuntimeException e)
+					{
+						close(peer, e.toString());
+					}
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			Log.error("p2p.selector_failed", "error", e.getMessage());
+		}
+		finally
+		{
+			for(Peer peer : peers) close(peer, "stopping");
+			closeQuietly(server);
+			closeQuietly(selector);
+		}
+	}
+
+	private void accept()
+	{
+		SocketChannel channel = null;
+		try
+		{
+			channel = server.accept();
+			if(channel == null) return;
+
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+			Peer peer = new Peer(channel, channel.getRemoteAddress().toString());
+			peer.key = channel.register(selector, 0, peer);
+			peers.add(peer);
+			connected(peer);
+		}
+		catch(IOException e)
+		{
+			Log.warn("p2p.accept_failed", "error", e.getMessage());
+			closeQuietly(channel);
+		}
+	}
+
+	private void connected(Peer peer)
+	{
+		peer.connected = true;
+		Log.info("p2p.connected", "peer", peer.name);
+		onWorker(peer, () -> greet(peer));
+	}
+
+	private void read(Peer peer) throws IOException
+	{
+		if(peer.channel.read(peer.in) < 0)
+		{
+			close(peer, "closed by peer");
+			return;
+		}
+		frames(peer);
+	}
+
+	// Hands complete frames in the read buffer to the worker, until the peer has too many waiting.
+	private void frames(Peer peer) throws IOException
+	{
+		if(peer.closed || peer.in.position() < 4) return;
+
+		peer.in.flip();
+		while(peer.in.remaining() >= 4 && peer.pendingIn.get() < MAX_PENDING_IN)
+		{
+			int length = peer.in.getInt(peer.in.position());
+			if(length < 1 || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+			if(peer.in.remaining() < 4 + length) break;
+
+			peer.in.getInt();
+			byte type = peer.in.get();
+			byte[] payload = new byte[length - 1];
+			peer.in.get(payload);
+
+			onWorker(peer, () -> handle(peer, type, ByteBuffer.wrap(payload)));
+		}
+		peer.in.compact();
+
+		// Grows the buffer when the next frame is bigger than it.
+		if(peer.in.position() >= 4)
+		{
+			int needed = 4 + peer.in.getInt(0);
+			if(needed > peer.in.capacity() && needed <= 4 + MAX_FRAME)
+			{
+				ByteBuffer bigger = ByteBuffer.allocate(needed);
+				peer.in.flip();
+				bigger.put(peer.in);
+				peer.in = bigger;
+			}
+		}
+	}
+
+	private void write(Peer peer) throws IOException
+	{
+		ByteBuffer frame;
+		while((frame = peer.out.peek()) != null)
+		{
+			peer.queuedOut.addAndGet(-peer.channel.write(frame));
+			if(frame.hasRemaining()) return;
+			peer.out.poll();
+		}
+	}
+
+	// Reads only while the peer's queues have room, and writes while there's anything to send.
+	private void updateInterest(Peer peer)
+	{
+		if(peer.closed || !peer.connected || !peer.key.isValid()) return;
+
+		if(peer.queuedOut.get() > MAX_QUEUED_OUT_HARD)
+		{
+			close(peer, "not reading");
+			return;
+		}
+
+		int ops = 0;
+		if(peer.pendingIn.get() < MAX_PENDING_IN && peer.queuedOut.get() < MAX_QUEUED_OUT) ops |= SelectionKey.OP_READ;
+		if(!peer.out.isEmpty()) ops |= SelectionKey.OP_WRITE;
+		peer.key.interestOps(ops);
+	}
+
+	private void close(Peer peer, String reason)
+	{
+		if(peer.closed) return;
+
+		peer.closed = true;
+		peers.remove(peer);
+		if(peer.key != null) peer.key.cancel();
+		closeQuietly(peer.channel);
+
+		Log.info("p2p.disconnected", "peer", peer.name, "reason", reason);
+		if(running) worker.execute(() -> forget(peer));
+	}
+
+	private void onSelector(Runnable task)
+	{
+		selectorTasks.add(task);
+		selector.wakeup();
+	}
+
+	// Closes the peer from any thread.
+	private void disconnect(Peer peer, String reason)
+	{
+		onSelector(() -> close(peer, reason));
+	}
+
+	private static void closeQuietly(Closeable closeable)
+	{
+		if(closeable == null) return;
+
+		try
+		{
+			closeable.close();
+		}
+		catch(IOException e)
+		{
+			// Nothing more to do with it either way.
+		}
+	}
+
+	/*
+	 * Queueing frames, from any thread.
+	 */
+
+	/**
+	 *
+	 * @param peer : Where to send.
+	 * @param type : Message type.
+	 * @param payload : The message.
+	 * @param droppable : Whether it may be dropped when the peer's queue is full, as announcements can.
+	 * @return : Whether it was queued.
+	 */
+	private boolean send(Peer peer, byte type, byte[] payload, boolean droppable)
+	{
+		if(peer.closed) return false;
+
+		int size = 5 + payload.length;
+		if(droppable && peer.queuedOut.get() + size > MAX_QUEUED_OUT)
+		{
+			DROPPED.inc();
+			return false;
+		}
+
+		ByteBuffer frame = ByteBuffer.allocate(size);
+		frame.putInt(1 + payload.length).put(type).put(payload);
+		frame.flip();
+
+		peer.queuedOut.addAndGet(size);
+		peer.out.add(frame);
+		SENT[type].inc();
+		selector.wakeup();
+		return true;
+	}
+
+	// Tells every peer that doesn't have it yet about a new block or transaction.
+	private void announce(byte kind, String hash, Peer from)
+	{
+		byte[] payload = inventory(kind, Collections.singletonList(hash));
+
+		for(Peer peer : peers)
+		{
+			if(peer == from || !peer.greeted || peer.knows(hash)) continue;
+			if(send(peer, INV, payload, true)) peer.remember(hash);
+		}
+	}
+
+	private static byte[] inventory(byte kind, List<String> hashes)
+	{
+		ByteBuffer out = ByteBuffer.allocate(4 + hashes.size() * 33);
+		out.putInt(hashes.size());
+		for(String hash : hashes) out.put(kind).put(StringTools.fromHex(hash));
+		return out.array();
+	}
+
+	/*
+	 * Worker thread.
+	 */
+
+	private void onWorker(Peer peer, Runnable task)
+	{
+		peer.pendingIn.incrementAndGet();
+		worker.execute(() -> {
+			try
+			{
+				if(!peer.closed) task.run();
+			}
+			catch(RuntimeException e)
+			{
+				Log.warn("p2p.bad_message", "peer", peer.name, "error", e.toString());
+				disconnect(peer, "bad message");
+			}
+			finally
+			{
+				// Lets the selector start reading from the peer again.
+				if(peer.pendingIn.decrementAndGet() == MAX_PENDING_IN - 1) selector.wakeup();
+			}
+		});
+	}
+
+	private void greet(Peer peer)
+	{
+		ChainState.Snapshot chain = ColeChain.state.current();
+
+		ByteBuffer hello = ByteBuffer.allocate(9);
+		hello.putInt(MAGIC).put(PROTOCOL_VERSION).putInt(chain.size());
+		send(peer, HELLO, hello.array(), false);
+		peer.greeted = true;
+
+		sendGetBlocks(peer);
+	}
+
+	private void handle(Peer peer, byte type, ByteBuffer payload)
+	{
+		RECEIVED[type > 0 && type < TYPE_NAMES.length ? type : 0].inc();
+
+		if(!peer.introduced && type != HELLO) throw new IllegalStateException("Expected HELLO, got message type " + type);
+
+		switch(type)
+		{
+			case HELLO: onHello(peer, payload); break;
+			case INV: onInv(peer, payload); break;
+			case GETDATA: onGetData(peer, payload); break;
+			case BLOCK: onBlock(peer, payload); break;
+			case TX: onTransaction(peer, payload); break;
+			case GETBLOCKS: onGetBlocks(peer, payload); break;
+			default: throw new IllegalArgumentException("Unknown message type " + type);
+		}
+	}
+
+	private void onHello(Peer peer, ByteBuffer payload)
+	{
+		if(payload.getInt() != MAGIC || payload.get() != PROTOCOL_VERSION)
+		{
+			throw new IllegalArgumentException("Not a ColeChain node, or a different protocol version");
+		}
+
+		peer.introduced = true;
+		peer.height = payload.getInt();
+		Log.info("p2p.hello", "peer", peer.name, "height", peer.height);
+
+		announceUnconfirmed(peer);
+	}
+
+	// Tells a new peer about the transactions it may have missed, those whose inputs are still unspent.
+	private void announceUnconfirmed(Peer peer)
+	{
+		ChainState.Snapshot chain = ColeChain.state.current();
+		ArrayList<String> ids = new ArrayList<>();
+
+		synchronized(recentTransactions)
+		{
+			for(Map.Entry<String, Relayed> entry : recentTransactions.entrySet())
+			{
+				boolean unspent = entry.getValue().inputs.length > 0;
+				for(String input : entry.getValue().inputs) unspent &= chain.getOutput(input) != null;
+
+				if(unspent) ids.add(entry.getKey());
+				if(ids.size() == MAX_ITEMS) break;
+			}
+		}
+
+		if(ids.isEmpty() || !send(peer, INV, inventory(ITEM_TX, ids), true)) return;
+		for(String id : ids) peer.remember(id);
+	}
+
+	// Asks for the items the peer announced that this node doesn't have and isn't already waiting for.
+	private void onInv(Peer peer, ByteBuffer payload)
+	{
+		int count = count(payload, MAX_ITEMS);
+		long now = System.currentTimeMillis();
+
+		// Requests that were never answered would otherwise pile up.
+		if(requested.size() > 10 * MAX_ITEMS) requested.values().removeIf(deadline -> deadline <= now);
+
+		ArrayList<String> blocks = new ArrayList<>();
+		ArrayList<String> wantedBlocks = new ArrayList<>();
+		ArrayList<String> wantedTransactions = new ArrayList<>();
+
+		for(int i = 0; i < count; ++i)
+		{
+			byte kind = payload.get();
+			String hash = readHash(payload);
+			peer.remember(hash);
+
+			Long deadline = requested.get(hash);
+			boolean waiting = deadline != null && deadline > now;
+
+			if(kind == ITEM_BLOCK)
+			{
+				blocks.add(hash);
+				if(waiting || orphans.containsKey(hash) || ColeChain.hasBlock(hash)) continue;
+				wantedBlocks.add(hash);
+			}
+			else if(kind == ITEM_TX)
+			{
+				if(waiting || orphanTransactions.containsKey(hash) || isRecentTransaction(hash)) continue;
+				wantedTransactions.add(hash);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown inventory kind " + kind);
+			}
+
+			requested.put(hash, now + REQUEST_TIMEOUT_MILLIS);
+			peer.asked.add(hash);
+		}
+
+		// A full answer to GETBLOCKS means there may be more after it.
+		if(blocks.size() == MAX_BLOCKS_PER_INV)
+		{
+			String last = blocks.get(blocks.size() - 1);
+			if(wantedBlocks.contains(last)) peer.continueAfter = last;
+			else sendGetBlocks(peer);
+		}
+
+		if(!wantedBlocks.isEmpty()) send(peer, GETDATA, inventory(ITEM_BLOCK, wantedBlocks), false);
+		if(!wantedTransactions.isEmpty()) send(peer, GETDATA, inventory(ITEM_TX, wantedTransactions), false);
+	}
+
+	private void onGetData(Peer peer, ByteBuffer payload)
+	{
+		int count = count(payload, MAX_ITEMS);
+
+		for(int i = 0; i < count; ++i)
+		{
+			byte kind = payload.get();
+			String hash = readHash(payload);
+
+			if(kind == ITEM_BLOCK)
+			{
+				Block block = ColeChain.findBlock(hash);
+				if(block == null) continue;
+
+				send(peer, BLOCK, BlockCodec.encode(block), false);
+				peer.remember(hash);
+			}
+			else if(kind == ITEM_TX)
+			{
+				Relayed transaction;
+				synchronized(recentTransactions)
+				{
+					transaction = recentTransactions.get(hash);
+				}
+				if(transaction == null) continue;
+
+				send(peer, TX, transaction.encoded, false);
+				peer.remember(hash);
+			}
+		}
+	}
+
+	private void onBlock(Peer peer, ByteBuffer payload)
+	{
+		Block block = BlockCodec.decodeBlock(payload);
+		if(!StringTools.isHash(block.hash)) throw new IllegalArgumentException("Block hash " + block.hash);
+
+		requested.remove(block.hash);
+		peer.asked.remove(block.hash);
+		peer.remember(block.hash);
+
+		receive(peer, block);
+
+		if(block.hash.equals(peer.continueAfter))
+		{
+			peer.continueAfter = null;
+			sendGetBlocks(peer);
+		}
+	}
+
+	// Puts a block on the chain, or holds it until its parent turns up.
+	private void receive(Peer peer, Block block)
+	{
+		if(orphans.containsKey(block.hash) || ColeChain.hasBlock(block.hash)) return;
+
+		// Only the genesis block ColeChain.genesisHash pins is ever taken, and a peer offering another is on a different chain.
+		if("0".equals(block.previousHash))
+		{
+			if(ColeChain.state.current().size() == 0 && ColeChain.adoptGenesis(block))
+			{
+				Log.info("p2p.genesis_adopted", "hash", block.hash, "peer", peer.name);
+				connectOrphans(block.hash);
+				return;
+			}
+
+			throw new IllegalArgumentException("Genesis block " + block.hash + " isn't this chain's");
+		}
+
+		if(!ColeChain.hasBlock(block.previousHash))
+		{
+			orphans.put(block.hash, block);
+			if(orphans.size() > MAX_ORPHANS) orphans.remove(orphans.keySet().iterator().next());
+
+			Log.debug("p2p.orphan", "hash", block.hash, "parent", block.previousHash, "peer", peer.name);
+			sendGetBlocks(peer);
+			return;
+		}
+
+		if(ColeChain.submitBlock(block)) connectOrphans(block.hash);
+	}
+
+	// Submits the orphans that were waiting on parent, then those waiting on them, and so on.
+	private void connectOrphans(String parent)
+	{
+		ArrayDeque<String> parents = new ArrayDeque<>();
+		parents.add(parent);
+
+		while(!parents.isEmpty())
+		{
+			String hash = parents.poll();
+
+			ArrayList<Block> children = new ArrayList<>();
+			for(Block orphan : orphans.values())
+			{
+				if(orphan.previousHash.equals(hash)) children.add(orphan);
+			}
+
+			for(Block child : children)
+			{
+				orphans.remove(child.hash);
+				if(ColeChain.submitBlock(child)) parents.add(child.hash);
+			}
+		}
+	}
+
+	private void onTransaction(Peer peer, ByteBuffer payload)
+	{
+		int start = payload.position();
+		Transaction transaction = BlockCodec.decodeTransaction(payload);
+		if(transaction.signature == null) throw new IllegalArgumentException("Unsigned transaction");
+
+		// The id and outputs are generated when a block is assembled. Ones sent along would be kept and break it.
+		if(transaction.transactionId != null || !transaction.outputs.isEmpty())
+		{
+			throw new IllegalArgumentException("Pending transaction already has an id or outputs");
+		}
+
+		byte[] encoded = new byte[payload.position() - start];
+		payload.position(start);
+		payload.get(encoded);
+
+		String id = Mempool.poolId(transaction);
+		requested.remove(id);
+		peer.asked.remove(id);
+		peer.remember(id);
+
+		if(orphanTransactions.containsKey(id) || isRecentTransaction(id)) return;
+
+		/*
+		 * The mempool turns away inputs the chain doesn't have. A node
+		 * still downloading blocks hears about transactions spending
+		 * their outputs, so those wait here instead of being lost.
+		 */
+		Relayed relayed = new Relayed(encoded, transaction);
+		if(spendsUnknownOutput(relayed, ColeChain.state.current()))
+		{
+			orphanTransactions.put(id, new OrphanTransaction(transaction, relayed, peer));
+			if(orphanTransactions.size() > MAX_ORPHAN_TRANSACTIONS)
+			{
+				orphanTransactions.remove(orphanTransactions.keySet().iterator().next());
+			}
+			return;
+		}
+
+		submitFromPeer(id, transaction, relayed, peer);
+	}
+
+	// Submits a transaction a peer sent, passing it on if the mempool accepts it.
+	private void submitFromPeer(String id, Transaction transaction, Relayed relayed, Peer from)
+	{
+		mempool.submit(transaction).thenAccept(accepted -> {
+			if(accepted) relay(id, relayed, from);
+		});
+	}
+
+	// Whether one of the outputs is neither unspent nor spent on the chain, so isn't on it yet.
+	private static boolean spendsUnknownOutput(Relayed transaction, ChainState.Snapshot chain)
+	{
+		for(String input : transaction.inputs)
+		{
+			if(chain.getOutput(input) == null && chain.getSpender(input) == null) return true;
+		}
+
+		return false;
+	}
+
+	// Submits the orphan transactions whose outputs have all reached the chain.
+	private void retryOrphanTransactions()
+	{
+		if(orphanTransactions.isEmpty()) return;
+
+		ChainState.Snapshot chain = ColeChain.state.current();
+		Iterator<Map.Entry<String, OrphanTransaction>> it = orphanTransactions.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Map.Entry<String, OrphanTransaction> entry = it.next();
+			OrphanTransaction orphan = entry.getValue();
+			if(spendsUnknownOutput(orphan.relayed, chain)) continue;
+
+			it.remove();
+			submitFromPeer(entry.getKey(), orphan.transaction, orphan.relayed, orphan.from);
+		}
+	}
+
+	/*
+	 * Keeps a transaction the mempool accepted, to serve and to
+	 * recognise as a repeat, and announces it. Rejected ones are
+	 * never kept, so they're never passed on.
+	 */
+	private void relay(String id, Relayed transaction, Peer from)
+	{
+		if(rememberTransaction(id, transaction)) announce(ITEM_TX, id, from);
+	}
+
+	// Answers a locator with the main chain blocks after the newest one it has in common.
+	private void onGetBlocks(Peer peer, ByteBuffer payload)
+	{
+		int count = count(payload, MAX_LOCATOR);
+		ChainState.Snapshot chain = ColeChain.state.current();
+
+		int fork = -1;
+		for(int i = 0; i < count; ++i)
+		{
+			int height = chain.getHeight(readHash(payload));
+			if(height >= 0)
+			{
+				fork = height;
+				break;
+			}
+		}
+
+		ArrayList<String> hashes = new ArrayList<>();
+		for(int height = fork + 1; height < chain.size() && hashes.size() < MAX_BLOCKS_PER_INV; ++height)
+		{
+			hashes.add(chain.getBlock(height).hash);
+		}
+
+		if(!hashes.isEmpty()) send(peer, INV, inventory(ITEM_BLOCK, hashes), false);
+	}
+
+	private void sendGetBlocks(Peer peer)
+	{
+		List<String> locator = locator(ColeChain.state.current());
+
+		ByteBuffer out = ByteBuffer.allocate(4 + locator.size() * 32);
+		out.putInt(locator.size());
+		for(String hash : locator) out.put(StringTools.fromHex(hash));
+		send(peer, GETBLOCKS, out.array(), false);
+	}
+
+	/**
+	 *
+	 * @param chain : This node's chain.
+	 * @return : The last ten block hashes, then ones further back at doubling gaps, ending with genesis.
+	 *
+	 * However far apart two chains are, the newest block they share
+	 * is found within a few dozen hashes.
+	 */
+	static List<String> locator(ChainState.Snapshot chain)
+	{
+		ArrayList<String> hashes = new ArrayList<>();
+		if(chain.size() == 0) return hashes;
+
+		int step = 1;
+		for(int height = chain.size() - 1; height > 0 && hashes.size() < MAX_LOCATOR - 1; height -= step)
+		{
+			hashes.add(chain.getBlock(height).hash);
+			if(hashes.size() >= 10) step *= 2;
+		}
+
+		hashes.add(chain.getBlock(0).hash);
+		return hashes;
+	}
+
+	// Stops waiting on anything the peer was asked for, so other peers can be asked instead.
+	private void forget(Peer peer)
+	{
+		for(String hash : peer.asked) requested.remove(hash);
+		peer.asked.clear();
+	}
+
+	// Remembers a transaction, and whether it's new.
+	private boolean rememberTransaction(String id, Relayed transaction)
+	{
+		synchronized(recentTransactions)
+		{
+			return recentTransactions.putIfAbsent(id, transaction) == null;
+		}
+	}
+
+	private boolean isRecentTransaction(String id)
+	{
+		synchronized(recentTransactions)
+		{
+			return recentTransactions.containsKey(id);
+		}
+	}
+
+	private static int count(ByteBuffer payload, int max)
+	{
+		int count = payload.getInt();
+		if(count < 0 || count > max) throw new IllegalArgumentException("Too many items: " + count);
+		return count;
+	}
+
+	private static String readHash(ByteBuffer payload)
+	{
+		byte[] hash = new byte[32];
+		payload.get(hash);
+		return StringTools.toHex(hash);
+	}
+}
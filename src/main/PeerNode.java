@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.ArrayList;
+
+/*
+ * 18 October 2026
+ * PeerNode.java
+ *
+ * Runs one node of a network, so a few can be started on one
+ * machine and watched gossiping. ColeChain keeps its chain in
+ * static fields, so each node needs its own JVM:
+ *
+ *   java PeerNode 9001 --genesis --send 20 --seconds 60
+ *   java PeerNode 9002 --seconds 60 --genesis-hash <hash> localhost:9001
+ *   java PeerNode 9003 --mine --seconds 60 --genesis-hash <hash> localhost:9002
+ *
+ * The first node makes the genesis block and sends coins around,
+ * the second only relays, and the third mines what reaches it.
+ * Nodes without --genesis take the genesis block from their peers,
+ * but only the one whose hash they're given, which the first node
+ * logs as node.genesis.
+ * Each prints its height, tip and UTXO commitment at the end, which
+ * match across nodes once they agree on the chain.
+ */
+
+public class PeerNode
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+
+		if(args.length == 0)
+		{
+			System.out.println("Usage: java PeerNode <port> [--genesis | --genesis-hash <hash>] [--mine] [--send <count>] [--seconds <n>] [host:port ...]");
+			return;
+		}
+
+		int port = Integer.parseInt(args[0]);
+		boolean genesis = false;
+		boolean mine = false;
+		int sends = 0;
+		int seconds = 30;
+		ArrayList<String> peers = new ArrayList<>();
+
+		for(int i = 1; i < args.length; ++i)
+		{
+			switch(args[i])
+			{
+				case "--genesis": genesis = true; break;
+				case "--genesis-hash": ColeChain.genesisHash = args[++i]; break;
+				case "--mine": mine = true; break;
+				case "--send": sends = Integer.parseInt(args[++i]); break;
+				case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+				default: peers.add(args[i]);
+			}
+		}
+
+		if(genesis) createGenesis();
+
+		Mempool mempool = new Mempool();
+		PeerNetwork network = new PeerNetwork(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), mempool);
+		network.start();
+
+		for(String peer : peers)
+		{
+			int colon = peer.lastIndexOf(':');
+			network.connect(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+		}
+
+		// The miner waits for a genesis block itself, taken from a peer or made above.
+		BlockPipeline pipeline = null;
+		if(mine)
+		{
+			pipeline = new BlockPipeline(mempool, 10, 200);
+			pipeline.start();
+		}
+
+		Wallet recipient = new Wallet();
+		int sent = 0;
+		Transaction last = null;
+		long end = System.currentTimeMillis() + seconds * 1000L;
+		long nextStatus = 0;
+
+		while(System.currentTimeMillis() < end)
+		{
+			ChainState.Snapshot chain = ColeChain.state.current();
+
+			/*
+			 * Every send spends the last one's change, so it waits until a
+			 * block confirms it or it's turned away and its inputs released.
+			 */
+			boolean settled = last == null || !ColeChain.walletOne.isPending(last.inputs.get(0).transactionOutputId);
+			if(genesis && sent < sends && settled)
+			{
+				last = ColeChain.walletOne.sendFunds(recipient.publickey, ColeChain.COIN);
+				if(last != null)
+				{
+					Transaction submitted = last;
+					network.submit(submitted).thenAccept(accepted -> {
+						if(!accepted) ColeChain.walletOne.release(submitted);
+					});
+					++sent;
+				}
+			}
+
+			if(System.currentTimeMillis() >= nextStatus)
+			{
+				Log.info("node.status", "port", port, "height", chain.size() - 1, "peers", network.getPeerCount(),
+						 "mempool", mempool.size());
+				nextStatus = System.currentTimeMillis() + 2000;
+			}
+
+			Thread.sleep(250);
+		}
+
+		if(pipeline != null) pipeline.stop();
+		network.stop();
+
+		ChainState.Snapshot chain = ColeChain.state.current();
+		Block tip = chain.getTip();
+		Log.info("node.final", "port", port, "height", chain.size() - 1, "tip", tip == null ? "none" : tip.hash,
+				 "utxoCommitment", chain.getUTXOCommitment(), "sent", sent);
+		System.exit(0);
+	}
+
+	// Mines a genesis block paying 100 coins to walletOne, as ColeChain.main does.
+	private static void createGenesis()
+	{
+		ColeChain.walletOne = new Wallet();
+		Wallet coinbase = new Wallet();
+
+		Transaction transaction = new Transaction(coinbase.publickey, ColeChain.walletOne.publickey, 100 * ColeChain.COIN, null);
+		transaction.generateSignature(coinbase.privatekey);
+
+		// Its real id rather than "0", so the block's hash covers what it pays out and peers can check it.
+		transaction.transactionId = transaction.calculateHash();
+		transaction.outputs.add(new TransactionOutput(transaction.recipient, transaction.value, transaction.transactionId));
+
+		ColeChain.genesisTransaction = transaction;
+		ColeChain.UTXOs.put(transaction.outputs.get(0).id, transaction.outputs.get(0));
+
+		Block block = new Block("0");
+		block.addTransaction(transaction);
+		ColeChain.addBlock(block);
+
+		ColeChain.genesisHash = block.hash;
+		Log.info("node.genesis", "hash", block.hash);
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * 18 October 2026
+ * PersistentMap.java
+ *
+ * An immutable hash map. Adding or removing a key returns a new
+ * map and leaves the old one untouched, sharing everything except
+ * the few nodes on the path to the changed key. Keeping every old
+ * version around therefore costs almost nothing, which is what lets
+ * ChainState hand readers a fixed view of the chain while the writer
+ * carries on.
+ *
+ * A hash array mapped trie: each level uses five bits of the key's
+ * hash to pick one of up to 32 slots, and a slot holds either an
+ * entry or the next level down. Keys whose hashes are identical
+ * share a collision node at the bottom.
+ */
+
+public final class PersistentMap<K, V>
+{
+	private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+	private final Node root;
+	private final int size;
+
+	private PersistentMap(Node root, int size)
+	{
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentMap<K, V> empty()
+	{
+		return (PersistentMap<K, V>) EMPTY;
+	}
+
+	/**
+	 *
+	 * @param key : Key to look up.
+	 * @return : Its value, or null if the key isn't in this version.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key)
+	{
+		return root == null ? null : (V) root.get(hash(key), 0, key);
+	}
+
+	public boolean containsKey(K key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 *
+	 * @param key : Key to set.
+	 * @param value : Its new value, not null.
+	 * @return : A map with the key set. This map is unchanged.
+	 */
+	public PersistentMap<K, V> plus(K key, V value)
+	{
+		boolean[] added = new boolean[1];
+		Node start = root == null ? BitmapNode.EMPTY : root;
+		Node changed = start.put(hash(key), 0, key, value, added);
+
+		if(changed == root) return this;
+		return new PersistentMap<>(changed, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 *
+	 * @param key : Key to drop.
+	 * @return : A map without the key. This map is unchanged.
+	 */
+	public PersistentMap<K, V> minus(K key)
+	{
+		if(root == null) return this;
+
+		Node changed = root.remove(hash(key), 0, key);
+		if(changed == root) return this;
+		return new PersistentMap<>(changed, size - 1);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// Spreads the high bits down, since the trie uses the low bits first.
+	private static int hash(Object key)
+	{
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private abstract static class Node
+	{
+		abstract Object get(int hash, int shift, Object key);
+
+		abstract Node put(int hash, int shift, Object key, Object value, boolean[] added);
+
+		// Returns this when the key is absent, null when the node ends up empty.
+		abstract Node remove(int hash, int shift, Object key);
+	}
+
+	/*
+	 * Up to 32 slots, only the used ones stored. entries holds a
+	 * key and value per slot, or null and a child node.
+	 */
+	private static final class BitmapNode extends Node
+	{
+		static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+		final int bitmap;
+		final Object[] entries;
+
+		BitmapNode(int bitmap, Object[] entries)
+		{
+			this.bitmap = bitmap;
+			this.entries = entries;
+		}
+
+		private static int bit(int hash, int shift)
+		{
+			return 1 << ((hash >>> shift) & 31);
+		}
+
+		private int index(int bit)
+		{
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		Object get(int hash, int shift, Object key)
+		{
+			int bit = bit(hash, shift);
+			if((bitmap & bit) == 0) return null;
+
+			int i = index(bit);
+			Object k = entries[2 * i];
+			Object v = entries[2 * i + 1];
+
+			if(k == null) return ((Node) v).get(hash, shift + 5, key);
+			return key.equals(k) ? v : null;
+		}
+
+		@Override
+		Node put(int hash, int shift, Object key, Object value, boolean[] added)
+		{
+			int bit = bit(hash, shift);
+			int i = index(bit);
+
+			if((bitmap & bit) == 0)
+			{
+				Object[] grown = new Object[entries.length + 2];
+				System.arraycopy(entries, 0, grown, 0, 2 * i);
+				grown[2 * i] = key;
+				grown[2 * i + 1] = value;
+				System.arraycopy(entries, 2 * i, grown, 2 * i + 2, entries.length - 2 * i);
+
+				added[0] = true;
+				return new BitmapNode(bitmap | bit, grown);
+			}
+
+			Object k = entries[2 * i];
+			Object v = entries[2 * i + 1];
+
+			if(k == null)
+			{
+				Node child = ((Node) v).put(hash, shift + 5, key, value, added);
+				return child == v ? this : with(i, null, child);
+			}
+
+			if(key.equals(k))
+			{
+				return value == v ? this : with(i, k, value);
+			}
+
+			// Two keys share this slot, so push both down a level.
+			added[0] = true;
+			return with(i, null, pair(shift + 5, k, v, hash(k), key, value, hash));
+		}
+
+		@Override
+		Node remove(int hash, int shift, Object key)
+		{
+			int bit = bit(hash, shift);
+			if((bitmap & bit) == 0) return this;
+
+			int i = index(bit);
+			Object k = entries[2 * i];
+			Object v = entries[2 * i + 1];
+
+			if(k == null)
+			{
+				Node child = ((Node) v).remove(hash, shift + 5, key);
+				if(child == v) return this;
+				if(child != null) return with(i, null, child);
+			}
+			else if(!key.equals(k))
+			{
+				return this;
+			}
+
+			if(bitmap == bit) return null;
+
+			Object[] shrunk = new Object[entries.length - 2];
+			System.arraycopy(entries, 0, shrunk, 0, 2 * i);
+			System.arraycopy(entries, 2 * i + 2, shrunk, 2 * i, entries.length - 2 * i - 2);
+			return new BitmapNode(bitmap & ~bit, shrunk);
+		}
+
+		// Copy of this node with slot i replaced.
+		private BitmapNode with(int i, Object key, Object value)
+		{
+			Object[] copy = entries.clone();
+			copy[2 * i] = key;
+			copy[2 * i + 1] = value;
+			return new BitmapNode(bitmap, copy);
+		}
+
+		private static Node pair(int shift, Object k1, Object v1, int h1, Object k2, Object v2, int h2)
+		{
+			if(h1 == h2) return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+
+			boolean[] ignored = new boolean[1];
+			return EMPTY.put(h1, shift, k1, v1, ignored).put(h2, shift, k2, v2, ignored);
+		}
+	}
+
+	// Keys whose hashes are equal in every bit, kept in a flat list.
+	private static final class CollisionNode extends Node
+	{
+		final int hash;
+		final Object[] entries;
+
+		CollisionNode(int hash, Object[] entries)
+		{
+			this.hash = hash;
+			this.entries = entries;
+		}
+
+		private int find(Object key)
+		{
+			for(int i = 0; i < entries.length; i += 2)
+			{
+				if(key.equals(entries[i])) return i;
+			}
+			return -1;
+		}
+
+		@Override
+		Object get(int hash, int shift, Object key)
+		{
+			if(hash != this.hash) return null;
+
+			int i = find(key);
+			return i < 0 ? null : entries[i + 1];
+		}
+
+		@Override
+		Node put(int hash, int shift, Object key, Object value, boolean[] added)
+		{
+			if(hash != this.hash)
+			{
+				// A different hash reached this depth, so this node needs a level above it.
+				BitmapNode parent = new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[] { null, this });
+				return parent.put(hash, shift, key, value, added);
+			}
+
+			int i = find(key);
+			if(i >= 0)
+			{
+				if(entries[i + 1] == value) return this;
+
+				Object[] copy = entries.clone();
+				copy[i + 1] = value;
+				return new CollisionNode(hash, copy);
+			}
+
+			Object[] grown = new Object[entries.length + 2];
+			System.arraycopy(entries, 0, grown, 0, entries.length);
+			grown[entries.length] = key;
+			grown[entries.length + 1] = value;
+
+			added[0] = true;
+			return new CollisionNode(hash, grown);
+		}
+
+		@Override
+		Node remove(int hash, int shift, Object key)
+		{
+			if(hash != this.hash) return this;
+
+			int i = find(key);
+			if(i < 0) return this;
+			if(entries.length == 2) return null;
+
+			Object[] shrunk = new Object[entries.length - 2];
+			System.arraycopy(entries, 0, shrunk, 0, i);
+			System.arraycopy(entries, i + 2, shrunk, i, entries.length - i - 2);
+			return new CollisionNode(hash, shrunk);
+		}
+	}
+}
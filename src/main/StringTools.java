@@ -1,8 +1,8 @@
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Base64;
 
@@ -11,6 +11,7 @@ import java.util.Base64;
  * 30 September 2018
  * StringTools.java
  * This class provides several methods to convert strings into hashes.
+ * The hashing and signing itself is done by CryptoService.
  */
 
 public class StringTools
@@ -23,35 +24,85 @@ public class StringTools
 	 */
 	public static String applySHA256(String input)
 	{
-		try
-		{
-			MessageDigest md = MessageDigest.getInstance("SHA-256");
+		// Digests our input into a SHA256 hash.
+		return toHex(CryptoService.sha256(input.getBytes(StandardCharsets.UTF_8)));
+	}
 
-			// Digests our input into a SHA256 hash.
-			byte[] hash = md.digest(input.getBytes("UTF-8"));
+	/**
+	 * @param input : Bytes to hash.
+	 * @return : The SHA256 hash of the bytes, in hex.
+	 */
+	public static String applySHA256(byte[] input)
+	{
+		return toHex(CryptoService.sha256(input));
+	}
 
-			StringBuilder hexString = new StringBuilder();
+	/**
+	 * 
+	 * @param hash : Raw bytes, usually a digest.
+	 * @return : The bytes as a lowercase hexidecimal string.
+	 */
+	public static String toHex(byte[] hash)
+	{
+		StringBuilder hexString = new StringBuilder(hash.length * 2);
 
-			for(int i = 0; i < hash.length; ++i)
-			{
-				// Converts each byte to hexidecimal.
-				String hex = Integer.toHexString(0xff & hash[i]);
+		for(int i = 0; i < hash.length; ++i)
+		{
+			// Converts each byte to hexidecimal.
+			String hex = Integer.toHexString(0xff & hash[i]);
 
-				if(hex.length() == 1) hexString.append(0);
-				
-				// Adding the resulting hash into the StringBuilder.
-				hexString.append(hex);
-			}
+			if(hex.length() == 1) hexString.append(0);
+			
+			// Adding the resulting hash into the StringBuilder.
+			hexString.append(hex);
+		}
+
+		return hexString.toString();
+	}
 
-			return hexString.toString();
+	/**
+	 * 
+	 * @param hex : Hexidecimal string with an even number of digits.
+	 * @return : The bytes it represents.
+	 */
+	public static byte[] fromHex(String hex)
+	{
+		byte[] bytes = new byte[hex.length() / 2];
+
+		for(int i = 0; i < bytes.length; ++i)
+		{
+			bytes[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4) | Character.digit(hex.charAt(i * 2 + 1), 16));
 		}
-		catch(Exception e)
+
+		return bytes;
+	}
+
+	/**
+	 * 
+	 * @param value : Any string.
+	 * @return : Whether it looks like a SHA256 hash, 64 lowercase hex digits.
+	 */
+	public static boolean isHash(String value)
+	{
+		if(value == null || value.length() != 64) return false;
+
+		for(int i = 0; i < 64; ++i)
 		{
-			System.err.println("Ran into exception... Exiting.");
-			System.exit(1);
+			char c = value.charAt(i);
+			if(!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) return false;
 		}
 
-		return "";
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param amount : Amount in base units.
+	 * @return : The amount in coins, e.g. "35" or "0.1".
+	 */
+	public static String formatAmount(long amount)
+	{
+		return BigDecimal.valueOf(amount, 8).stripTrailingZeros().toPlainString();
 	}
 
 	/**
@@ -77,31 +128,18 @@ public class StringTools
 	 */
 	public static byte[] applyECDSASig(PrivateKey privatekey, String input)
 	{
-		Signature dsa;
-		byte[] output = new byte[0];
-
-		try
-		{
-			dsa = Signature.getInstance("ECDSA", "BC");
-			
-			// Initializes bytes to be securely signed.
-			dsa.initSign(privatekey);
-			byte[] strByte = input.getBytes();
-			
-			// Updates bytes with privatekey to continue signing
-			dsa.update(strByte);
-			
-			// Signs data.
-			byte[] realSig = dsa.sign();
-			
-			output = realSig;
-		}
-		catch(Exception e)
-		{
-			throw new RuntimeException(e);
-		}
+		return applyECDSASig(privatekey, input.getBytes());
+	}
 
-		return output;
+	/**
+	 * 
+	 * @param privatekey : senders private key
+	 * @param input : relevant information for transaction, already as bytes.
+	 * @return : byte array
+	 */
+	public static byte[] applyECDSASig(PrivateKey privatekey, byte[] input)
+	{
+		return CryptoService.sign(privatekey, input);
 	}
 
 	/**
@@ -116,71 +154,50 @@ public class StringTools
 	 */
 	public static boolean verifyECDSASig(PublicKey publickey, String data, byte[] signature)
 	{
-		try
-		{
-			Signature ecdsaVerify = Signature.getInstance("ECDSA", "BC");
-			
-			// Initializes the verification process.
-			ecdsaVerify.initVerify(publickey);
-			
-			// Updates bytes after publickey has been retrieved.
-			ecdsaVerify.update(data.getBytes());
-			
-			// Tries to verify signature.
-			return ecdsaVerify.verify(signature);
-		}
-		catch(Exception e)
-		{
-			throw new RuntimeException(e);
-		}
+		return verifyECDSASig(publickey, data.getBytes(), signature);
+	}
+
+	/**
+	 * 
+	 * @param publickey : sender's publickey.
+	 * @param data : Relevant transaction information, already as bytes.
+	 * @param signature : Signature to be verified.
+	 * @return : the validity of the ECDSA Signature.
+	 */
+	public static boolean verifyECDSASig(PublicKey publickey, byte[] data, byte[] signature)
+	{
+		return CryptoService.verify(publickey, data, signature);
 	}
 
 	/**
 	 * 
 	 * @param transactions : Array of transactions
-	 * @return : returns a merkle root to be used on the tree.
+	 * @return : returns the merkle root of the transactions, "" when there are none.
 	 * 
-	 * This method, when completed, will output a merkle root to
-	 * be added to the hash tree. Currently, this is a proof of concept
-	 * implementation. Further building to come.
+	 * Builds a full MerkleTree and throws it away. Blocks keep their
+	 * own tree, so prefer Block.getMerkleTree when there is a block.
 	 */
 	public static String getMerkleRoot(ArrayList<Transaction> transactions)
 	{
-		int count = transactions.size();
-		ArrayList<String> previousTreeLayer = new ArrayList<>();
+		ArrayList<String> ids = new ArrayList<>(transactions.size());
 		for(Transaction transaction : transactions)
 		{
-			previousTreeLayer.add(transaction.transactionId);
+			ids.add(transaction.transactionId);
 		}
 
-		ArrayList<String> treeLayer = previousTreeLayer;
-
-		while(count > 1)
-		{
-			treeLayer = new ArrayList<>();
-			for(int i = 1; i < previousTreeLayer.size(); ++i)
-			{
-				treeLayer.add(StringTools.applySHA256(previousTreeLayer.get(i-1) + previousTreeLayer.get(i)));
-			}
-
-			count = treeLayer.size();
-			previousTreeLayer = treeLayer;
-		}
-
-		String merkleRoot;
-		if(treeLayer.size() == 1) merkleRoot = treeLayer.get(0);
-		else merkleRoot = "";
-
-		return merkleRoot;
+		return MerkleTree.build(ids).getRootHex();
 	}
 
 	/**
 	 * 
 	 * @param key : key from which we'll grab the key.
 	 * @return : returns the given key converted to string.
+	 * 
+	 * Public keys go through their cached Address.
 	 */
 	public static String getStringFromKey(Key key)
 	{
+		if(key instanceof PublicKey) return Address.of((PublicKey) key).toString();
 		return Base64.getEncoder().encodeToString(key.getEncoded());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+ * 18 October 2026
+ * Target.java
+ *
+ * The proof of work a block has to show. A block meets its target
+ * when its raw 256 bit hash, read as an unsigned number, is no
+ * bigger than the target. Halving the target doubles the expected
+ * number of hashes, so difficulty can move in steps as fine as
+ * needed rather than the 16x steps of counting leading hex zeroes.
+ */
+
+public final class Target implements Comparable<Target>
+{
+	// 2^256, one more than the largest hash.
+	private static final BigInteger HASH_SPACE = BigInteger.ONE.shiftLeft(256);
+
+	private final BigInteger value;
+
+	// The target as 32 big-endian bytes, to compare hashes against without converting them.
+	private final byte[] bytes;
+
+	/**
+	 *
+	 * @param value : Largest hash that meets the target, between 1 and 2^256 - 1.
+	 */
+	public Target(BigInteger value)
+	{
+		if(value.signum() <= 0 || value.compareTo(HASH_SPACE) >= 0)
+		{
+			throw new IllegalArgumentException("Target " + value + " is out of range.");
+		}
+
+		this.value = value;
+
+		byte[] raw = value.toByteArray();
+		bytes = new byte[32];
+		int length = Math.min(raw.length, 32);
+		System.arraycopy(raw, raw.length - length, bytes, 32 - length, length);
+	}
+
+	/**
+	 *
+	 * @param zeroes : Number of leading hex zeroes, from 0 to 63.
+	 * @return : The target met by exactly the hashes whose hex form starts with that many zeroes.
+	 */
+	public static Target ofLeadingZeroes(int zeroes)
+	{
+		if(zeroes < 0 || zeroes > 63) throw new IllegalArgumentException("Can't require " + zeroes + " leading zeroes.");
+		return new Target(BigInteger.ONE.shiftLeft(256 - 4 * zeroes).subtract(BigInteger.ONE));
+	}
+
+	/**
+	 *
+	 * @param hash : A raw 32 byte digest.
+	 * @return : Whether the hash is no bigger than the target.
+	 *
+	 * Compares byte by byte and stops at the first that differs,
+	 * which for almost every attempt while mining is the first.
+	 */
+	public boolean isMetBy(byte[] hash)
+	{
+		for(int i = 0; i < bytes.length; ++i)
+		{
+			int difference = (hash[i] & 0xff) - (bytes[i] & 0xff);
+			if(difference != 0) return difference < 0;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param hash : A hash as 64 hex characters.
+	 * @return : Whether it meets the target. Anything that isn't a hash doesn't.
+	 */
+	public boolean isMetBy(String hash)
+	{
+		if(hash == null || hash.length() != 64) return false;
+
+		for(int i = 0; i < bytes.length; ++i)
+		{
+			int high = Character.digit(hash.charAt(2 * i), 16);
+			int low = Character.digit(hash.charAt(2 * i + 1), 16);
+			if(high < 0 || low < 0) return false;
+
+			int difference = ((high << 4) | low) - (bytes[i] & 0xff);
+			if(difference != 0) return difference < 0;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param numerator : e.g. how long blocks actually took.
+	 * @param denominator : e.g. how long they should have taken.
+	 * @return : This target times numerator / denominator, kept within range.
+	 */
+	public Target scale(long numerator, long denominator)
+	{
+		BigInteger scaled = value.multiply(BigInteger.valueOf(numerator)).divide(BigInteger.valueOf(denominator));
+
+		if(scaled.signum() <= 0) scaled = BigInteger.ONE;
+		if(scaled.compareTo(HASH_SPACE) >= 0) scaled = HASH_SPACE.subtract(BigInteger.ONE);
+		return new Target(scaled);
+	}
+
+	/**
+	 *
+	 * @param limit : The easiest target allowed.
+	 * @return : This target, or the limit if this one is easier.
+	 */
+	public Target atMost(Target limit)
+	{
+		return compareTo(limit) > 0 ? limit : this;
+	}
+
+	/**
+	 *
+	 * @return : Expected number of hashes to meet the target, 2^256 / (target + 1).
+	 */
+	public BigInteger work()
+	{
+		return HASH_SPACE.divide(value.add(BigInteger.ONE));
+	}
+
+	public BigInteger getValue()
+	{
+		return value;
+	}
+
+	// The target as 64 hex characters, comparable with block hashes.
+	public String toHex()
+	{
+		return StringTools.toHex(bytes);
+	}
+
+	@Override
+	public int compareTo(Target other)
+	{
+		return value.compareTo(other.value);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof Target && Arrays.equals(bytes, ((Target) other).bytes);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public String toString()
+	{
+		return toHex();
+	}
+}
@@ -1,5 +1,8 @@
 import java.security.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Function;
 
 /*
  * Author: Cole Polyak
@@ -15,8 +18,8 @@ public class Transaction
 	public PublicKey sender;
 	public PublicKey recipient; 
 	
-	// How many coins.
-	public float value;
+	// How many coins, in base units (see ColeChain.COIN).
+	public long value;
 	
 	public byte[] signature;
 	
@@ -26,17 +29,26 @@ public class Transaction
 	// The generated transaction outputs.
 	public ArrayList<TransactionOutput> outputs = new ArrayList<>();
 	
-	private static int sequence = 0;
+	private static final String REJECTED = "colechain_transactions_rejected_total";
+	
+	// Signed data, and the fields it was worked out from. Replaced whenever one of them changes.
+	private volatile SigningPayload signingPayload;
+	
+	// Raw form of transactionId, and the id it was worked out from.
+	private byte[] idBytes;
+	private String idBytesFor;
 	
 	/**
 	 * 
 	 * @param from : sender
 	 * @param to : recipient
-	 * @param value : number of coins
+	 * @param value : number of coins, in base units
 	 * @param inputs : The inputs for the transaction
 	 */
-	public Transaction(PublicKey from, PublicKey to, float value, ArrayList<TransactionInput> inputs)
+	public Transaction(PublicKey from, PublicKey to, long value, ArrayList<TransactionInput> inputs)
 	{
+		if(value < 0) throw new IllegalArgumentException("Transaction value can't be negative: " + value);
+		
 		sender = from;
 		recipient = to;
 		this.value = value;
@@ -52,24 +64,83 @@ public class Transaction
 		// Invalid signature check.
 		if(verifySignature() == false)
 		{
-			System.out.println("Transaction signature failed to verify.");
+			rejected("bad_signature");
+			Log.info("transaction.rejected", "reason", "bad_signature");
 			return false;
 		}
 		
+		// Held from the lookup to the spend, so no other writer can spend the same inputs in between.
+		ColeChain.state.beginWrite();
+		try
+		{
+			// Links inputs and generates the id and outputs.
+			if(!prepare(ColeChain.UTXOs::get)) return false;
+			
+			// Adds the transaction outputs to the macroscopic transaction ledeger.
+			for(TransactionOutput o : outputs)
+			{
+				ColeChain.UTXOs.put(o.id, o);
+			}
+			
+			// Removes the specific transaction input. It's become an output.
+			for(TransactionInput i : inputs)
+			{
+				// Transaction cannot be found. Let's skip it.
+				if(i.UTXO == null) continue;
+				ColeChain.UTXOs.remove(i.UTXO.id);
+			}
+		}
+		finally
+		{
+			ColeChain.state.endWrite();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param lookup : Finds an unspent output by id.
+	 * @return : Whether the transaction is large enough to go ahead.
+	 * 
+	 * The part of processing that doesn't touch the chain. Links each
+	 * input to the output it spends, then generates the transaction id
+	 * and outputs. Lets block assembly work against its own view of
+	 * the unspent outputs.
+	 */
+	boolean prepare(Function<String, TransactionOutput> lookup)
+	{
 		// Sets the transaction output object for each input.
 		for(TransactionInput i : inputs)
 		{
-			i.UTXO = ColeChain.UTXOs.get(i.transactionOutputId);
+			i.UTXO = lookup.apply(i.transactionOutputId);
+			
+			// The signature only proves the sender agreed, so the sender has to be who the output was paid to.
+			if(i.UTXO != null && !i.UTXO.isMine(sender))
+			{
+				rejected("not_owner");
+				Log.info("transaction.rejected", "reason", "not_owner", "output", i.transactionOutputId);
+				return false;
+			}
 		}
 		
 		// Transaction is too small for supported minimum.
 		if(getInputsValue() < ColeChain.minimumTransaction)
 		{
-			System.out.println("Transaction inputs too small: " + getInputsValue());
+			rejected("inputs_too_small");
+			Log.info("transaction.rejected", "reason", "inputs_too_small", "inputs", getInputsValue());
+			return false;
+		}
+		
+		// Inputs must cover what's being sent, there's no such thing as negative change.
+		if(getInputsValue() < value)
+		{
+			rejected("inputs_below_value");
+			Log.info("transaction.rejected", "reason", "inputs_below_value", "inputs", getInputsValue(), "value", value);
 			return false;
 		}
 		
-		float leftOver = getInputsValue() - value;
+		long leftOver = getInputsValue() - value;
 		
 		// Generates the transaction id.
 		transactionId = calculateHash();
@@ -80,45 +151,31 @@ public class Transaction
 		// Adds sender to the transaction output, including the coins lost.
 		outputs.add(new TransactionOutput(this.sender, leftOver, transactionId));
 		
-		// Adds the transaction outputs to the macroscopic transaction ledeger.
-		for(TransactionOutput o : outputs)
-		{
-			ColeChain.UTXOs.put(o.id, o);
-		}
-		
-		// Removes the specific transaction input. It's become an output.
-		for(TransactionInput i : inputs)
-		{
-			// Transaction cannot be found. Let's skip it.
-			if(i.UTXO == null) continue;
-			ColeChain.UTXOs.remove(i.UTXO.id);
-		}
-		
 		return true;
 	}
 	
 	// Gets the total of the transaction inputs.
-	public float getInputsValue()
+	public long getInputsValue()
 	{
-		float total = 0;
+		long total = 0;
 		
 		for(TransactionInput i : inputs)
 		{
 			// If the transaction can't be found, skip it.
 			if(i.UTXO == null) continue;
-			total += i.UTXO.value;
+			total = Math.addExact(total, i.UTXO.value);
 		}
 		
 		return total;
 	}
 	
 	// Gets the total sum of the transaction outputs.
-	public float getOutputsValue()
+	public long getOutputsValue()
 	{
-		float total = 0;
+		long total = 0;
 		for(TransactionOutput o : outputs)
 		{
-			total += o.value;
+			total = Math.addExact(total, o.value);
 		}
 		
 		return total;
@@ -126,18 +183,67 @@ public class Transaction
 	
 	/**
 	 * 
-	 * @return : The SHA256 hash of the transaction.
+	 * @return : The SHA256 hash of the transaction, over the signed payload and the signature.
+	 * 
+	 * Depends on nothing but the transaction, so anyone holding it
+	 * can check its id. Every signing is different, so two
+	 * transactions never share one.
+	 */
+	String calculateHash()
+	{
+		byte[] payload = signingPayload();
+		byte[] data = Arrays.copyOf(payload, payload.length + signature.length);
+		System.arraycopy(signature, 0, data, payload.length, signature.length);
+		
+		return StringTools.toHex(CryptoService.sha256(data));
+	}
+	
+	// The cached payload itself, for use inside the package.
+	byte[] signingPayload()
+	{
+		SigningPayload payload = signingPayload;
+		
+		// The fields are public, so the cache is only used while they still match it.
+		if(payload == null || !payload.matches(this))
+		{
+			payload = new SigningPayload(this);
+			signingPayload = payload;
+		}
+		
+		return payload.bytes;
+	}
+	
+	/**
+	 * 
+	 * @return : Copy of the bytes that get signed: sender, recipient, value and the ids of the outputs spent.
+	 * 
+	 * Worked out again only when one of those fields has changed.
 	 */
-	private String calculateHash()
+	public byte[] getSigningPayload()
 	{
-		sequence++;
-		
-		// Combines sender, recipient, value, and sequence values into SHA256 hash.
-		return StringTools.applySHA256(
-				StringTools.getStringFromKey(sender) + 
-				StringTools.getStringFromKey(recipient) + 
-				Float.toString(value) +
-				sequence);
+		return signingPayload().clone();
+	}
+	
+	/**
+	 * 
+	 * @return : Copy of the transaction id as raw bytes, or null before processing.
+	 * 
+	 * 32 bytes for a normal id. Other ids, like the genesis "0", come
+	 * back as their UTF-8 text.
+	 */
+	public byte[] getIdBytes()
+	{
+		if(transactionId == null) return null;
+		
+		if(idBytes == null || !transactionId.equals(idBytesFor))
+		{
+			idBytes = StringTools.isHash(transactionId) ? 
+					  StringTools.fromHex(transactionId) : 
+					  transactionId.getBytes(StandardCharsets.UTF_8);
+			idBytesFor = transactionId;
+		}
+		
+		return idBytes.clone();
 	}
 	
 	/**
@@ -149,10 +255,7 @@ public class Transaction
 	 */
 	public void generateSignature(PrivateKey privatekey)
 	{
-		String data = StringTools.getStringFromKey(sender) + 
-					  StringTools.getStringFromKey(recipient) +
-					  Float.toString(value);
-		signature = StringTools.applyECDSASig(privatekey, data);
+		signature = StringTools.applyECDSASig(privatekey, signingPayload());
 	}
 	
 	/**
@@ -164,10 +267,62 @@ public class Transaction
 	 */
 	public boolean verifySignature()
 	{
-		String data = StringTools.getStringFromKey(sender) + 
-					  StringTools.getStringFromKey(recipient) +
-					  Float.toString(value);
-		return StringTools.verifyECDSASig(sender, data, signature);
+		return StringTools.verifyECDSASig(sender, signingPayload(), signature);
+	}
+	
+	/**
+	 * 
+	 * @param reason : Why, e.g. "bad_signature" or "double_spend".
+	 * 
+	 * Counts a transaction turned away anywhere on the node.
+	 */
+	static void rejected(String reason)
+	{
+		Metrics.counter(REJECTED, "Transactions turned away, by reason.", "reason", reason).inc();
+	}
+	
+	/*
+	 * A signing payload along with the fields it was built from, in
+	 * one object so threads verifying the same transaction never see
+	 * the bytes of one set of fields paired with another.
+	 */
+	private static final class SigningPayload
+	{
+		final PublicKey sender;
+		final PublicKey recipient;
+		final long value;
+		final String[] inputs;
+		final byte[] bytes;
+		
+		SigningPayload(Transaction transaction)
+		{
+			sender = transaction.sender;
+			recipient = transaction.recipient;
+			value = transaction.value;
+			inputs = inputIds(transaction);
+			
+			// Covers the inputs too, so they can't be swapped for others without a new signature.
+			StringBuilder text = new StringBuilder(256);
+			text.append(Address.of(sender)).append(Address.of(recipient)).append(value);
+			for(String input : inputs) text.append(input);
+			bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		
+		boolean matches(Transaction transaction)
+		{
+			return transaction.sender == sender && transaction.recipient == recipient && transaction.value == value &&
+				   Arrays.equals(inputs, inputIds(transaction));
+		}
+		
+		// Genesis transactions have no inputs at all.
+		private static String[] inputIds(Transaction transaction)
+		{
+			if(transaction.inputs == null) return new String[0];
+			
+			String[] ids = new String[transaction.inputs.size()];
+			for(int i = 0; i < ids.length; ++i) ids[i] = transaction.inputs.get(i).transactionOutputId;
+			return ids;
+		}
 	}
 	
 }
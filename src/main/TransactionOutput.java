@@ -1,3 +1,4 @@
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 
 /*
@@ -17,29 +18,69 @@ public class TransactionOutput
 	// Wallet address recipient.
 	public PublicKey recipient;
 	
-	public float value;
+	// Coins, in base units.
+	public long value;
 	
 	// The transaction that came before. 
 	public String parentTransactionId;
 	
+	// Cached hash of the output, as it counts towards a UTXOCommitment.
+	private byte[] commitmentHash;
 	
-	public TransactionOutput(PublicKey recipient, float value, String parentTransactionId)
+	
+	public TransactionOutput(PublicKey recipient, long value, String parentTransactionId)
 	{
 		this.recipient = recipient;
 		this.value = value;
 		this.parentTransactionId = parentTransactionId;
 		
-		// Generates an SHA256 hash of the important data points.
-		id = StringTools.applySHA256(
+		id = idFor(recipient, value, parentTransactionId);
+	}
+	
+	// Rebuilds an output whose id is already known, e.g. one read back from disk. Validation checks it against idFor.
+	TransactionOutput(String id, PublicKey recipient, long value, String parentTransactionId)
+	{
+		this.id = id;
+		this.recipient = recipient;
+		this.value = value;
+		this.parentTransactionId = parentTransactionId;
+	}
+	
+	/**
+	 * 
+	 * @return : The id an output with these fields has, an SHA256 hash of the important data points.
+	 */
+	static String idFor(PublicKey recipient, long value, String parentTransactionId)
+	{
+		return StringTools.applySHA256(
 				StringTools.getStringFromKey(recipient) + 
-				Float.toString(value) + 
+				Long.toString(value) + 
 				parentTransactionId);
+	}
+	
+	/**
+	 * 
+	 * @return : SHA256 over every field of the output, worked out once.
+	 * 
+	 * Covers the owner and value as well as the id, so two sets that
+	 * only agree on ids still commit differently.
+	 */
+	byte[] getCommitmentHash()
+	{
+		if(commitmentHash == null)
+		{
+			commitmentHash = CryptoService.sha256((id + ":" + 
+					Address.of(recipient) + ":" + 
+					Long.toString(value) + ":" + 
+					parentTransactionId).getBytes(StandardCharsets.UTF_8));
+		}
 		
+		return commitmentHash;
 	}
 	
 	// Checks if the coins are owned by your address.
 	public boolean isMine(PublicKey publickey)
 	{
-		return publickey == recipient;
+		return recipient.equals(publickey);
 	}
 }
@@ -0,0 +1,168 @@
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Collection;
+
+/*
+ * 18 October 2026
+ * UTXOCommitment.java
+ *
+ * A running hash over a set of unspent outputs.
+ *
+ * This is MuHash: each output's hash is stretched to a number
+ * mod the prime 2^3072 - 1103717, and the commitment is the product
+ * of those numbers. Adding an output multiplies it into a numerator
+ * and spending one multiplies it into a denominator, so keeping it
+ * up to date costs one hash and one multiplication per change, and
+ * the order outputs came and went in doesn't matter. Two nodes with
+ * the same unspent outputs end up with the same commitment whatever
+ * path they took.
+ *
+ * A sum of 256 bit hashes would be cheaper, but sums like that can
+ * be hit on purpose by solving for a set of outputs that adds up to
+ * a given value. Finding a set of outputs whose product matches in
+ * a group this large is a discrete log problem, so the commitment
+ * holds up against outputs chosen by an attacker.
+ */
+
+public class UTXOCommitment
+{
+	private static final int BITS = 3072;
+
+	// 2^3072 - OFFSET, the largest 3072 bit safe prime.
+	private static final BigInteger OFFSET = BigInteger.valueOf(1103717);
+	private static final BigInteger PRIME = BigInteger.ONE.shiftLeft(BITS).subtract(OFFSET);
+	private static final BigInteger LOW_BITS = BigInteger.ONE.shiftLeft(BITS).subtract(BigInteger.ONE);
+
+	// Bytes an output's hash is stretched to before reducing it mod PRIME.
+	private static final int ELEMENT_BYTES = 384;
+
+	// Product of the outputs added and of those removed, each mod PRIME.
+	private BigInteger numerator = BigInteger.ONE;
+	private BigInteger denominator = BigInteger.ONE;
+
+	// toHex of the current state, until it changes. Dividing out the denominator is the slow part.
+	private String hex;
+
+	public UTXOCommitment()
+	{
+	}
+
+	/**
+	 *
+	 * @param outputs : Unspent outputs.
+	 * @return : The commitment over exactly those outputs.
+	 */
+	public static UTXOCommitment of(Collection<TransactionOutput> outputs)
+	{
+		UTXOCommitment commitment = new UTXOCommitment();
+		for(TransactionOutput output : outputs) commitment.add(output);
+		return commitment;
+	}
+
+	/**
+	 *
+	 * @return : An independent copy, to keep updating separately.
+	 */
+	public UTXOCommitment copy()
+	{
+		UTXOCommitment copy = new UTXOCommitment();
+		copy.numerator = numerator;
+		copy.denominator = denominator;
+		copy.hex = hex;
+		return copy;
+	}
+
+	// Adds an output that just became unspent.
+	public void add(TransactionOutput output)
+	{
+		numerator = reduce(numerator.multiply(element(output)));
+		hex = null;
+	}
+
+	// Takes out an output that was just spent.
+	public void remove(TransactionOutput output)
+	{
+		denominator = reduce(denominator.multiply(element(output)));
+		hex = null;
+	}
+
+	// Clears the commitment back to the empty set.
+	public void clear()
+	{
+		numerator = BigInteger.ONE;
+		denominator = BigInteger.ONE;
+		hex = null;
+	}
+
+	/*
+	 * x mod PRIME, for x below PRIME^2. Since 2^3072 = OFFSET mod PRIME,
+	 * the bits above 3072 can be folded back in times OFFSET, which is
+	 * much cheaper than a full division.
+	 */
+	private static BigInteger reduce(BigInteger x)
+	{
+		while(x.bitLength() > BITS)
+		{
+			x = x.shiftRight(BITS).multiply(OFFSET).add(x.and(LOW_BITS));
+		}
+
+		return x.compareTo(PRIME) >= 0 ? x.subtract(PRIME) : x;
+	}
+
+	// Stretches the output's hash to ELEMENT_BYTES with SHA256(hash + counter) blocks, as a number mod PRIME.
+	private static BigInteger element(TransactionOutput output)
+	{
+		byte[] hash = output.getCommitmentHash();
+		byte[] stretched = new byte[ELEMENT_BYTES];
+		MessageDigest md = CryptoService.sha256Digest();
+
+		for(int block = 0; block * 32 < ELEMENT_BYTES; ++block)
+		{
+			md.update(hash);
+			md.update((byte) block);
+			System.arraycopy(md.digest(), 0, stretched, block * 32, 32);
+		}
+
+		return reduce(new BigInteger(1, stretched));
+	}
+
+	/**
+	 *
+	 * @return : The commitment as 64 hex characters, the SHA256 of the set's product.
+	 */
+	public String toHex()
+	{
+		if(hex == null)
+		{
+			BigInteger product = reduce(numerator.multiply(denominator.modInverse(PRIME)));
+
+			// Fixed width, so the hash doesn't depend on BigInteger's sign byte or leading zeroes.
+			byte[] bytes = product.toByteArray();
+			byte[] padded = new byte[ELEMENT_BYTES];
+			int length = Math.min(bytes.length, ELEMENT_BYTES);
+			System.arraycopy(bytes, bytes.length - length, padded, ELEMENT_BYTES - length, length);
+
+			hex = StringTools.toHex(CryptoService.sha256(padded));
+		}
+
+		return hex;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return other instanceof UTXOCommitment && toHex().equals(((UTXOCommitment) other).toHex());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return toHex().hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return toHex();
+	}
+}
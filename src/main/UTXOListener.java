@@ -0,0 +1,31 @@
+/*
+ * 18 October 2026
+ * UTXOListener.java
+ *
+ * Told about changes to a UTXOSet as they happen, so anything
+ * tracking part of the set can keep itself up to date instead
+ * of scanning the set again.
+ *
+ * Called on whichever thread changed the set, while it's being
+ * changed, so implementations should be quick and must not
+ * change the set themselves.
+ */
+
+public interface UTXOListener
+{
+	// An output became unspent.
+	void outputCreated(TransactionOutput output);
+
+	// An output was spent, or dropped from the set.
+	void outputSpent(TransactionOutput output);
+
+	/**
+	 * The chain moved to a different history, e.g. it was reloaded
+	 * or a fork overtook it. The outputs that changed along the way
+	 * have already been reported one by one; this is for throwing
+	 * away anything built on the old history.
+	 */
+	default void reorganized()
+	{
+	}
+}
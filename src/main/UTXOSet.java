@@ -0,0 +1,315 @@
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * 18 October 2026
+ * UTXOSet.java
+ *
+ * The set of unspent transaction outputs on the chain.
+ * Alongside the outputs themselves it keeps an index of
+ * outputs by owner and a running balance per owner, so
+ * wallets never have to scan the whole set, and a
+ * commitment over the whole set for comparing state.
+ * Listeners hear about every output created or spent.
+ */
+
+public class UTXOSet
+{
+	// Every unspent output, keyed by output id.
+	private final HashMap<String, TransactionOutput> outputs = new HashMap<>();
+
+	/*
+	 * Unspent outputs grouped by the address that owns them.
+	 * Keyed by Address rather than PublicKey since equal keys
+	 * decoded from disk don't always share a hashCode.
+	 */
+	private final HashMap<Address, HashMap<String, TransactionOutput>> byOwner = new HashMap<>();
+
+	// Running total of each owner's unspent outputs.
+	private final HashMap<Address, Long> balances = new HashMap<>();
+
+	// Running hash over every unspent output.
+	private final UTXOCommitment commitment = new UTXOCommitment();
+
+	// Listeners for one owner's outputs, so a change only reaches the wallets it concerns.
+	private final ConcurrentHashMap<Address, CopyOnWriteArrayList<UTXOListener>> ownerListeners = new ConcurrentHashMap<>();
+
+	// Listeners for every change.
+	private final CopyOnWriteArrayList<UTXOListener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 *
+	 * @param id : Output id.
+	 * @return : The unspent output, or null if it is spent or unknown.
+	 */
+	public TransactionOutput get(String id)
+	{
+		return outputs.get(id);
+	}
+
+	public boolean containsKey(String id)
+	{
+		return outputs.containsKey(id);
+	}
+
+	/**
+	 *
+	 * @param id : Output id.
+	 * @param output : The unspent output.
+	 *
+	 * Adds an output to the set and to its owner's index.
+	 */
+	public void put(String id, TransactionOutput output)
+	{
+		TransactionOutput previous = outputs.put(id, output);
+		if(previous != null)
+		{
+			unindex(previous);
+			commitment.remove(previous);
+			fireSpent(previous);
+		}
+		commitment.add(output);
+
+		Address owner = Address.of(output.recipient);
+		byOwner.computeIfAbsent(owner, k -> new HashMap<>()).put(id, output);
+		balances.merge(owner, output.value, Math::addExact);
+
+		fireCreated(owner, output);
+	}
+
+	/**
+	 *
+	 * @param id : Output id.
+	 * @return : The output that was removed, or null.
+	 *
+	 * Marks an output as spent.
+	 */
+	public TransactionOutput remove(String id)
+	{
+		TransactionOutput removed = outputs.remove(id);
+		if(removed != null)
+		{
+			unindex(removed);
+			commitment.remove(removed);
+			fireSpent(removed);
+		}
+		return removed;
+	}
+
+	/**
+	 *
+	 * @param transaction : An already processed transaction, e.g. one read from disk.
+	 *
+	 * Links the transaction's inputs to the outputs they spend, marks
+	 * those spent and adds the transaction's own outputs.
+	 */
+	public void applyTransaction(Transaction transaction)
+	{
+		if(transaction.inputs != null)
+		{
+			for(TransactionInput i : transaction.inputs)
+			{
+				i.UTXO = get(i.transactionOutputId);
+			}
+		}
+
+		for(TransactionOutput o : transaction.outputs)
+		{
+			put(o.id, o);
+		}
+
+		if(transaction.inputs != null)
+		{
+			for(TransactionInput i : transaction.inputs)
+			{
+				if(i.UTXO != null) remove(i.UTXO.id);
+			}
+		}
+	}
+
+	// Drops an output from its owner's index and balance.
+	private void unindex(TransactionOutput output)
+	{
+		Address owner = Address.of(output.recipient);
+		HashMap<String, TransactionOutput> owned = byOwner.get(owner);
+		if(owned == null) return;
+
+		owned.remove(output.id);
+
+		if(owned.isEmpty())
+		{
+			byOwner.remove(owner);
+			balances.remove(owner);
+		}
+		else
+		{
+			balances.merge(owner, -output.value, Math::addExact);
+		}
+	}
+
+	/**
+	 *
+	 * @param owner : Public key of the owner.
+	 * @return : Sum of the owner's unspent outputs.
+	 */
+	public long getBalance(PublicKey owner)
+	{
+		return balances.getOrDefault(Address.of(owner), 0L);
+	}
+
+	/**
+	 *
+	 * @param owner : Public key of the owner.
+	 * @return : Read only view of the owner's unspent outputs.
+	 */
+	public Collection<TransactionOutput> getOwned(PublicKey owner)
+	{
+		HashMap<String, TransactionOutput> owned = byOwner.get(Address.of(owner));
+		if(owned == null) return Collections.emptyList();
+		return Collections.unmodifiableCollection(owned.values());
+	}
+
+	/**
+	 *
+	 * @return : Read only view of every unspent output.
+	 */
+	public Collection<TransactionOutput> values()
+	{
+		return Collections.unmodifiableCollection(outputs.values());
+	}
+
+	/**
+	 *
+	 * @return : Copy of the commitment over the current unspent outputs.
+	 *
+	 * Kept up to date on every put and remove, so it's free to read.
+	 */
+	public UTXOCommitment getCommitment()
+	{
+		return commitment.copy();
+	}
+
+	/**
+	 *
+	 * @return : The commitment over the current unspent outputs, as hex.
+	 *
+	 * Read off the live commitment, so the hex it caches is kept until
+	 * the next put or remove rather than thrown away with a copy.
+	 */
+	public String getCommitmentHex()
+	{
+		return commitment.toHex();
+	}
+
+	public int size()
+	{
+		return outputs.size();
+	}
+
+	/**
+	 *
+	 * Empties the set, telling listeners every output is gone.
+	 * Owner listeners only hear about their own outputs.
+	 */
+	public void clear()
+	{
+		for(UTXOListener listener : listeners)
+		{
+			for(TransactionOutput output : outputs.values()) listener.outputSpent(output);
+		}
+
+		for(Map.Entry<Address, CopyOnWriteArrayList<UTXOListener>> entry : ownerListeners.entrySet())
+		{
+			HashMap<String, TransactionOutput> owned = byOwner.get(entry.getKey());
+			if(owned == null) continue;
+
+			for(TransactionOutput output : owned.values())
+			{
+				for(UTXOListener listener : entry.getValue()) listener.outputSpent(output);
+			}
+		}
+
+		outputs.clear();
+		byOwner.clear();
+		balances.clear();
+		commitment.clear();
+	}
+
+	/**
+	 *
+	 * @param owner : Public key whose outputs to hear about.
+	 * @param listener : Told whenever one of the owner's outputs is created or spent.
+	 */
+	public void addListener(PublicKey owner, UTXOListener listener)
+	{
+		ownerListeners.compute(Address.of(owner), (k, forOwner) -> {
+			if(forOwner == null) forOwner = new CopyOnWriteArrayList<>();
+			forOwner.add(listener);
+			return forOwner;
+		});
+	}
+
+	/**
+	 *
+	 * @param listener : Told about every output created or spent.
+	 */
+	public void addListener(UTXOListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	// Stops a listener hearing about anything, whichever way it was added.
+	public void removeListener(UTXOListener listener)
+	{
+		listeners.remove(listener);
+
+		for(Address owner : ownerListeners.keySet())
+		{
+			ownerListeners.computeIfPresent(owner, (k, forOwner) -> {
+				forOwner.remove(listener);
+				return forOwner.isEmpty() ? null : forOwner;
+			});
+		}
+	}
+
+	/**
+	 *
+	 * Tells every listener the chain switched history. Called once
+	 * the outputs themselves have been updated.
+	 */
+	public void fireReorganized()
+	{
+		for(UTXOListener listener : listeners) listener.reorganized();
+		for(CopyOnWriteArrayList<UTXOListener> forOwner : ownerListeners.values())
+		{
+			for(UTXOListener listener : forOwner) listener.reorganized();
+		}
+	}
+
+	private void fireCreated(Address owner, TransactionOutput output)
+	{
+		for(UTXOListener listener : listeners) listener.outputCreated(output);
+
+		CopyOnWriteArrayList<UTXOListener> forOwner = ownerListeners.get(owner);
+		if(forOwner != null)
+		{
+			for(UTXOListener listener : forOwner) listener.outputCreated(output);
+		}
+	}
+
+	private void fireSpent(TransactionOutput output)
+	{
+		for(UTXOListener listener : listeners) listener.outputSpent(output);
+
+		CopyOnWriteArrayList<UTXOListener> forOwner = ownerListeners.get(Address.of(output.recipient));
+		if(forOwner != null)
+		{
+			for(UTXOListener listener : forOwner) listener.outputSpent(output);
+		}
+	}
+}
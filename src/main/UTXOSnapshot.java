@@ -0,0 +1,239 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/*
+ * 18 October 2026
+ * UTXOSnapshot.java
+ *
+ * The full set of unspent outputs as of one block, written to a
+ * single file. A new node loads the snapshot instead of replaying
+ * every transaction since genesis, then validates from that
+ * height on.
+ *
+ * File:
+ *   magic (4), version (1), height (4), tipHash, commitment,
+ *   owner count (4), owner keys,
+ *   output count (4), outputs sorted by id,
+ *   SHA256 of everything before it (32)
+ *
+ * Output:
+ *   id, owner index (4), value (8), parentTransactionId
+ *
+ * Hashes and keys are stored as in BlockCodec. Each owner's key
+ * is stored once and outputs refer to it by index, so loading
+ * only decodes each curve point once. The commitment is the
+ * UTXOCommitment over the outputs and is checked on load.
+ */
+
+public class UTXOSnapshot
+{
+	// "UTXO" in ASCII.
+	private static final int MAGIC = 0x5554584f;
+
+	// Current format version.
+	public static final byte VERSION = 2;
+
+	// Size of the trailing checksum.
+	private static final int CHECKSUM_LENGTH = 32;
+
+	// Height of the block the snapshot was taken at.
+	public final int height;
+
+	// Hash of the block the snapshot was taken at.
+	public final String tipHash;
+
+	// The unspent outputs as of that block, keyed by id.
+	public final HashMap<String, TransactionOutput> outputs;
+
+	// Commitment over the outputs.
+	public final UTXOCommitment commitment;
+
+	private UTXOSnapshot(int height, String tipHash, HashMap<String, TransactionOutput> outputs, UTXOCommitment commitment)
+	{
+		this.height = height;
+		this.tipHash = tipHash;
+		this.outputs = outputs;
+		this.commitment = commitment;
+	}
+
+	/**
+	 *
+	 * @param file : Where to write the snapshot.
+	 * @param height : Height of the block the outputs are as of.
+	 * @param tipHash : Hash of that block.
+	 * @param UTXOs : The unspent outputs.
+	 *
+	 * Streams the outputs out in id order, hashing as it goes. The
+	 * snapshot is written next to the target and moved into place,
+	 * so a crash never leaves half a snapshot behind.
+	 */
+	public static void write(File file, int height, String tipHash, Collection<TransactionOutput> UTXOs) throws IOException
+	{
+		ArrayList<TransactionOutput> sorted = new ArrayList<>(UTXOs);
+		sorted.sort(Comparator.comparing(o -> o.id));
+
+		HashMap<Address, Integer> ownerIndex = new HashMap<>();
+		ArrayList<PublicKey> owners = new ArrayList<>();
+		for(TransactionOutput o : sorted)
+		{
+			if(ownerIndex.putIfAbsent(Address.of(o.recipient), owners.size()) == null) owners.add(o.recipient);
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+
+		// A digest of its own, since Address.of can use this thread's engine mid-write.
+		MessageDigest md;
+		try
+		{
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new CryptoService.CryptoException("SHA-256 is unavailable", e);
+		}
+
+		try(FileOutputStream fileOut = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(new DigestOutputStream(new BufferedOutputStream(fileOut), md)))
+		{
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(height);
+			BlockCodec.writeHash(out, tipHash);
+			BlockCodec.writeHash(out, UTXOCommitment.of(sorted).toHex());
+
+			out.writeInt(owners.size());
+			for(PublicKey owner : owners) BlockCodec.writeKey(out, owner);
+
+			out.writeInt(sorted.size());
+			for(TransactionOutput o : sorted)
+			{
+				BlockCodec.writeHash(out, o.id);
+				out.writeInt(ownerIndex.get(Address.of(o.recipient)));
+				out.writeLong(o.value);
+				BlockCodec.writeHash(out, o.parentTransactionId);
+			}
+
+			// Taken before the checksum itself goes through the digest.
+			out.flush();
+			out.write(md.digest());
+			out.flush();
+			fileOut.getFD().sync();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 *
+	 * @param file : A snapshot written by write.
+	 * @return : The snapshot's height, tip hash and outputs.
+	 *
+	 * Maps the file, checks the checksum over the mapping and decodes
+	 * the outputs straight into a map sized for them up front.
+	 */
+	public static UTXOSnapshot read(File file) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if(channel.size() < CHECKSUM_LENGTH || channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Snapshot " + file + " has an invalid size.");
+			}
+
+			MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int bodyLength = mapping.capacity() - CHECKSUM_LENGTH;
+
+			ByteBuffer body = mapping.duplicate();
+			body.limit(bodyLength);
+			MessageDigest md = CryptoService.sha256Digest();
+			md.update(body);
+
+			byte[] expected = new byte[CHECKSUM_LENGTH];
+			mapping.position(bodyLength);
+			mapping.get(expected);
+			if(!Arrays.equals(md.digest(), expected))
+			{
+				throw new IOException("Snapshot " + file + " failed its checksum.");
+			}
+
+			mapping.position(0);
+			mapping.limit(bodyLength);
+
+			try
+			{
+				return decode(mapping);
+			}
+			catch(RuntimeException e)
+			{
+				throw new IOException("Snapshot " + file + " is malformed.", e);
+			}
+		}
+	}
+
+	private static UTXOSnapshot decode(ByteBuffer in) throws IOException
+	{
+		if(in.getInt() != MAGIC) throw new IOException("Not a UTXO snapshot.");
+
+		byte version = in.get();
+		if(version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+		int height = in.getInt();
+		String tipHash = BlockCodec.readHash(in);
+		String recorded = BlockCodec.readHash(in);
+
+		PublicKey[] owners = new PublicKey[in.getInt()];
+		for(int i = 0; i < owners.length; ++i) owners[i] = BlockCodec.readKey(in);
+
+		int count = in.getInt();
+		HashMap<String, TransactionOutput> outputs = new HashMap<>((int) (count / 0.75f) + 1);
+		UTXOCommitment commitment = new UTXOCommitment();
+
+		String previousId = null;
+		for(int i = 0; i < count; ++i)
+		{
+			String id = BlockCodec.readHash(in);
+			PublicKey owner = owners[in.getInt()];
+			long value = in.getLong();
+			String parentTransactionId = BlockCodec.readHash(in);
+
+			// Sorted and unique, so a repeated or shuffled id means a bad writer.
+			if(previousId != null && previousId.compareTo(id) >= 0)
+			{
+				throw new IOException("Snapshot outputs are out of order at " + id);
+			}
+			previousId = id;
+
+			TransactionOutput output = new TransactionOutput(id, owner, value, parentTransactionId);
+			outputs.put(id, output);
+			commitment.add(output);
+		}
+
+		if(in.hasRemaining()) throw new IOException("Snapshot has trailing data.");
+
+		// The checksum covers the bytes, this covers what they mean.
+		if(!commitment.toHex().equals(recorded))
+		{
+			throw new IOException("Snapshot outputs don't match its commitment.");
+		}
+
+		return new UTXOSnapshot(height, tipHash, outputs, commitment);
+	}
+}
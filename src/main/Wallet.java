@@ -1,8 +1,11 @@
 import java.security.*;
 import java.security.spec.ECGenParameterSpec;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 
 /*
  * Author: Cole Polyak
@@ -14,15 +17,74 @@ import java.util.Map;
 
 public class Wallet 
 {
+	// Elliptic curve every wallet key is generated on.
+	public static final String CURVE = "prime192v1";
+	
+	// How long a signed transaction's outputs stay held back if nothing confirms or releases them.
+	public static final long DEFAULT_PENDING_EXPIRY_MILLIS = 10 * 60 * 1000L;
+	
 	// User's personal private key.
 	public PrivateKey privatekey;
 	
 	// The public "address"(key) for the wallet.
 	public PublicKey publickey;
 	
-	// A record of the unsigned transaction outputs assocaited with this wallet.
+	// A record of the unsigned transaction outputs assocaited with this wallet, as the chain has them.
 	public HashMap<String, TransactionOutput> UTXOs = new HashMap<>();
 	
+	// The outputs free to spend, smallest value first, for coin selection.
+	private final TreeSet<TransactionOutput> byValue = new TreeSet<>(CoinSelector.BY_VALUE);
+	
+	// Ids of outputs spent by transactions this wallet signed that the chain hasn't applied yet, and when they were signed.
+	private final HashMap<String, Long> pending = new HashMap<>();
+	
+	private long pendingExpiryMillis = DEFAULT_PENDING_EXPIRY_MILLIS;
+	
+	// Sum of UTXOs, kept up to date by the chain's events.
+	private volatile long balance;
+	
+	// Decides which outputs pay for each transaction.
+	private CoinSelector coinSelector = new BranchAndBoundSelector();
+	
+	// Hears about this wallet's outputs from ColeChain.UTXOs.
+	private final UTXOListener listener = new UTXOListener()
+	{
+		@Override
+		public void outputCreated(TransactionOutput output)
+		{
+			synchronized(Wallet.this)
+			{
+				if(UTXOs.put(output.id, output) != null) return;
+				
+				if(!pending.containsKey(output.id)) byValue.add(output);
+				balance += output.value;
+			}
+		}
+		
+		@Override
+		public void outputSpent(TransactionOutput output)
+		{
+			synchronized(Wallet.this)
+			{
+				if(UTXOs.remove(output.id) == null) return;
+				
+				byValue.remove(output);
+				pending.remove(output.id);
+				balance -= output.value;
+			}
+		}
+		
+		@Override
+		public void reorganized()
+		{
+			// Pending spends were signed against the old history, so free them up.
+			synchronized(Wallet.this)
+			{
+				releasePending(new ArrayList<>(pending.keySet()));
+			}
+		}
+	};
+	
 	public Wallet()
 	{
 		generateKeyPair();
@@ -38,7 +100,7 @@ public class Wallet
 		{
 			KeyPairGenerator keyGen = KeyPairGenerator.getInstance("ECDSA", "BC");
 			SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-			ECGenParameterSpec ecSpec = new ECGenParameterSpec("prime192v1");
+			ECGenParameterSpec ecSpec = new ECGenParameterSpec(CURVE);
 			
 			// Generating key pair.
 			keyGen.initialize(ecSpec, random);
@@ -51,65 +113,85 @@ public class Wallet
 		{
 			throw new RuntimeException(e);
 		}
+		
+		watch();
+	}
+	
+	// Starts following the current key's outputs, dropping anything tracked for an old key.
+	private synchronized void watch()
+	{
+		ColeChain.UTXOs.removeListener(listener);
+		UTXOs.clear();
+		byValue.clear();
+		pending.clear();
+		balance = 0;
+		
+		ColeChain.UTXOs.addListener(publickey, listener);
+		for(TransactionOutput UTXO : ColeChain.UTXOs.getOwned(publickey))
+		{
+			listener.outputCreated(UTXO);
+		}
 	}
 	
 	/**
 	 * 
-	 * @return : The current balance of the wallet.
+	 * Stops following the chain. The wallet's balance and outputs
+	 * are left as they were.
+	 */
+	public void unwatch()
+	{
+		ColeChain.UTXOs.removeListener(listener);
+	}
+	
+	/**
 	 * 
-	 * This method sums the coins owned by the wallet.
+	 * @return : The current balance of the wallet, in base units.
+	 * 
+	 * The coins owned by the wallet on the chain, including any a
+	 * signed transaction is about to spend. Kept up to date as
+	 * outputs are created and spent, so nothing is summed here.
 	 */
-	public float getBalance()
+	public long getBalance()
 	{
-		float total = 0;
-		
-		for(Map.Entry<String, TransactionOutput> item : ColeChain.UTXOs.entrySet())
-		{
-			TransactionOutput UTXO = item.getValue();
-			
-			// Verifies coin is owned by given wallet.
-			if(UTXO.isMine(publickey))
-			{
-				UTXOs.put(UTXO.id, UTXO);
-				total += UTXO.value;
-			}
-		}
-		
-		return total;
+		return balance;
 	}
 	
 	/**
 	 * 
 	 * @param _recipient : Wallet publickey that will receive the coins.
-	 * @param value : how many coins to be transfered.
+	 * @param value : how many coins to be transfered, in base units.
 	 * @return : Returns a transaction object to be included on block.
 	 * 
 	 * When transaction is valid, this method sends a certain number of coins
 	 * to another wallet address.
 	 */
-	public Transaction sendFunds(PublicKey _recipient, float value)
+	public synchronized Transaction sendFunds(PublicKey _recipient, long value)
 	{
+		expirePending();
+		
 		// Insufficient fund check.
 		if(getBalance() < value)
 		{
-			System.out.println("Insufficient funds. Transaction aborted.");
+			Transaction.rejected("insufficient_funds");
+			Log.info("wallet.insufficient_funds", "balance", getBalance(), "value", value);
 			return null;
 		}
 		
-		ArrayList<TransactionInput> inputs = new ArrayList<>();
+		List<TransactionOutput> selected = coinSelector.select(Collections.unmodifiableNavigableSet(byValue), value);
+		
+		if(selected == null)
+		{
+			Transaction.rejected("insufficient_funds");
+			Log.info("wallet.insufficient_funds", "balance", getBalance(), "value", value, "reason", "no_selection");
+			return null;
+		}
 		
-		float total = 0;
+		ArrayList<TransactionInput> inputs = new ArrayList<>();
 		
-		// Returns set so that we can iterate over the map.
-		for(Map.Entry<String, TransactionOutput> item : UTXOs.entrySet())
+		for(TransactionOutput UTXO : selected)
 		{
-			TransactionOutput UTXO = item.getValue();
-			total += UTXO.value;
-			
 			// Adds the new transaction input.
 			inputs.add(new TransactionInput(UTXO.id));
-			
-			if(total > value) break;
 		}
 		
 		// Creates the new transaction.
@@ -118,11 +200,93 @@ public class Wallet
 		// Generates the signature for the new transaction and signs it. 
 		newTransaction.generateSignature(privatekey);
 		
-		for(TransactionInput input : inputs)
+		// Held back from selection until the chain spends them.
+		long now = System.currentTimeMillis();
+		for(TransactionOutput UTXO : selected)
 		{
-			UTXOs.remove(input.transactionOutputId);
+			byValue.remove(UTXO);
+			pending.put(UTXO.id, now);
 		}
 		
 		return newTransaction;
 	}
+	
+	/**
+	 * 
+	 * @param transaction : A transaction from sendFunds that won't make it onto the chain.
+	 * 
+	 * Makes the outputs it would have spent available again.
+	 */
+	public synchronized void release(Transaction transaction)
+	{
+		ArrayList<String> ids = new ArrayList<>();
+		for(TransactionInput input : transaction.inputs) ids.add(input.transactionOutputId);
+		releasePending(ids);
+	}
+	
+	/**
+	 * 
+	 * @param outputId : Id of one of this wallet's outputs.
+	 * @return : Whether a transaction this wallet signed is still waiting to spend it.
+	 * 
+	 * False once the chain spends it, or once the transaction is
+	 * released or expires.
+	 */
+	public synchronized boolean isPending(String outputId)
+	{
+		expirePending();
+		return pending.containsKey(outputId);
+	}
+	
+	/*
+	 * Releases outputs held back for longer than pendingExpiryMillis.
+	 * A transaction can be dropped where the wallet never hears of it,
+	 * like being evicted from a full mempool, and its outputs would
+	 * otherwise never be spendable again.
+	 */
+	private void expirePending()
+	{
+		long cutoff = System.currentTimeMillis() - pendingExpiryMillis;
+		ArrayList<String> expired = new ArrayList<>();
+		
+		for(Map.Entry<String, Long> entry : pending.entrySet())
+		{
+			if(entry.getValue() <= cutoff) expired.add(entry.getKey());
+		}
+		
+		if(expired.isEmpty()) return;
+		Log.info("wallet.pending_expired", "outputs", expired.size());
+		releasePending(expired);
+	}
+	
+	// Moves outputs from pending back to spendable, if the wallet still owns them.
+	private void releasePending(List<String> ids)
+	{
+		for(String id : ids)
+		{
+			if(pending.remove(id) == null) continue;
+			
+			TransactionOutput UTXO = UTXOs.get(id);
+			if(UTXO != null) byValue.add(UTXO);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param coinSelector : Strategy for picking the outputs future transactions spend.
+	 */
+	public void setCoinSelector(CoinSelector coinSelector)
+	{
+		this.coinSelector = coinSelector;
+	}
+	
+	/**
+	 * 
+	 * @param millis : How long a signed transaction's outputs are held back before they can be spent again.
+	 */
+	public synchronized void setPendingExpiry(long millis)
+	{
+		if(millis < 1) throw new IllegalArgumentException("Pending expiry must be positive.");
+		pendingExpiryMillis = millis;
+	}
 }
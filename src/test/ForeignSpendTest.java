@@ -0,0 +1,116 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/*
+ * 18 October 2026
+ * ForeignSpendTest.java
+ *
+ * Checks that an output paid to one key can't be spent by a
+ * transaction another key signed. A thief sends such a transaction
+ * to a node over the wire, as any peer could, then a block holding
+ * it. The node has to refuse both, while taking the honest
+ * transaction and block sent right after each, which also shows the
+ * thief's messages had been handled by then.
+ *
+ *   java -cp <classes>:bcprov.jar ForeignSpendTest
+ */
+
+public class ForeignSpendTest
+{
+	// Wire format, as PeerNetwork has it.
+	private static final int MAGIC = 0x434f4c45;
+	private static final byte PROTOCOL_VERSION = 1;
+	private static final byte HELLO = 1;
+	private static final byte BLOCK = 4;
+	private static final byte TX = 5;
+
+	public static void main(String[] args) throws Exception
+	{
+		Block genesis = TestChain.create();
+		Wallet walletOne = ColeChain.walletOne;
+		Wallet walletTwo = ColeChain.walletTwo;
+
+		// Gives walletTwo an output of its own for the thief to go after.
+		Block first = new Block(genesis.hash);
+		first.addTransaction(walletOne.sendFunds(walletTwo.publickey, 10 * ColeChain.COIN));
+		ColeChain.addBlock(first);
+		TestChain.check(walletTwo.getBalance() == 10 * ColeChain.COIN, "walletTwo has 10 coins");
+		TransactionOutput victim = walletTwo.UTXOs.values().iterator().next();
+
+		// One verifier thread, so the mempool handles transactions in the order they arrive.
+		Mempool mempool = new Mempool(1);
+		PeerNetwork network = new PeerNetwork(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), mempool);
+		network.start();
+
+		try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), network.getPort()))
+		{
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			send(out, HELLO, ByteBuffer.allocate(9).putInt(MAGIC).put(PROTOCOL_VERSION).putInt(0).array());
+
+			// Signed, validly, by the thief, over an output paid to walletTwo.
+			Wallet thief = new Wallet();
+			ArrayList<TransactionInput> inputs = new ArrayList<>();
+			inputs.add(new TransactionInput(victim.id));
+			Transaction theft = new Transaction(thief.publickey, thief.publickey, victim.value, inputs);
+			theft.generateSignature(thief.privatekey);
+			TestChain.check(theft.verifySignature(), "the theft carries a valid signature");
+
+			Transaction honest = walletOne.sendFunds(walletTwo.publickey, ColeChain.COIN);
+			send(out, TX, BlockCodec.encode(theft));
+			send(out, TX, BlockCodec.encode(honest));
+
+			String honestInput = honest.inputs.get(0).transactionOutputId;
+			TestChain.await(() -> mempool.isClaimed(honestInput), 10_000, "the honest transaction from the peer is in the mempool");
+			TestChain.check(mempool.size() == 1 && !mempool.isClaimed(victim.id), "the theft from the peer was refused");
+
+			// Block assembly refuses it too.
+			TestChain.check(!theft.prepare(ColeChain.UTXOs::get), "assembling the theft into a block fails");
+
+			// Filled in the way assembly would have, so the ownership of its input is all that's wrong with it.
+			theft.transactionId = theft.calculateHash();
+			theft.outputs.add(new TransactionOutput(thief.publickey, victim.value, theft.transactionId));
+			theft.outputs.add(new TransactionOutput(thief.publickey, 0, theft.transactionId));
+
+			Block tip = ColeChain.state.current().getTip();
+			Target target = ColeChain.targetFor(ColeChain.state.current().size(), ColeChain.state.current()::getBlock);
+
+			Block stolen = new Block(tip.hash);
+			stolen.addProcessedTransaction(theft);
+			stolen.mineBlock(target);
+
+			Block empty = new Block(tip.hash);
+			empty.mineBlock(target);
+
+			send(out, BLOCK, BlockCodec.encode(stolen));
+			send(out, BLOCK, BlockCodec.encode(empty));
+
+			TestChain.await(() -> ColeChain.hasBlock(empty.hash), 10_000, "the honest block from the peer was taken");
+			TestChain.check(ColeChain.state.current().getTip().hash.equals(empty.hash), "the honest block is the tip");
+			TestChain.check(!ColeChain.hasBlock(stolen.hash), "the block with the theft was refused");
+			TestChain.check(ColeChain.state.current().getOutput(victim.id) != null, "walletTwo's output is still unspent");
+			TestChain.check(ColeChain.isValid(), "the chain is valid");
+		}
+		finally
+		{
+			network.stop();
+			mempool.shutdown();
+		}
+
+		System.out.println("ForeignSpendTest passed");
+		System.exit(0);
+	}
+
+	// Writes one frame: length, type, payload.
+	private static void send(DataOutputStream out, byte type, byte[] payload) throws IOException
+	{
+		out.writeInt(1 + payload.length);
+		out.writeByte(type);
+		out.write(payload);
+		out.flush();
+	}
+}
@@ -0,0 +1,110 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * 18 October 2026
+ * PeerPropagationTest.java
+ *
+ * Checks that a transaction and a block reach another node over
+ * loopback. This process is one node. The other is a PeerNode in a
+ * second JVM, since ColeChain keeps its chain in static fields. The
+ * test follows it through the node.status and node.final lines it
+ * logs, and checks that the transaction reaches its mempool and
+ * that it ends on the block this node mined.
+ *
+ *   java -cp <classes>:bcprov.jar PeerPropagationTest
+ */
+
+public class PeerPropagationTest
+{
+	// How long the other node runs before logging node.final and exiting.
+	private static final int PEER_SECONDS = 12;
+
+	private static final Pattern FIELD = Pattern.compile("(\\w+)=(\\S+)");
+
+	public static void main(String[] args) throws Exception
+	{
+		// The other node checks the genesis block at its own default difficulty.
+		Block genesis = TestChain.create(ColeChain.difficulty);
+
+		Mempool mempool = new Mempool();
+		PeerNetwork network = new PeerNetwork(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), mempool);
+		network.start();
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process peer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "PeerNode", "0",
+										  "--genesis-hash", genesis.hash, "--seconds", String.valueOf(PEER_SECONDS),
+										  "localhost:" + network.getPort())
+				.redirectErrorStream(true)
+				.start();
+
+		// The fields of the latest node.status and node.final lines from the other node.
+		ConcurrentHashMap<String, String> status = new ConcurrentHashMap<>();
+		ConcurrentHashMap<String, String> last = new ConcurrentHashMap<>();
+		Thread reader = new Thread(() -> follow(peer, status, last), "peer-output");
+		reader.setDaemon(true);
+		reader.start();
+
+		try
+		{
+			TestChain.await(() -> "0".equals(status.get("height")), 10_000, "the other node took the genesis block");
+
+			Transaction transaction = ColeChain.walletOne.sendFunds(ColeChain.walletTwo.publickey, ColeChain.COIN);
+			TestChain.check(network.submit(transaction).get(), "the mempool took the transaction");
+			TestChain.await(() -> "1".equals(status.get("mempool")), 10_000, "the transaction reached the other node's mempool");
+
+			// A copy goes in the block, so the one in the mempool keeps no id or outputs.
+			Block block = new Block(genesis.hash);
+			block.addTransaction(BlockCodec.decodeTransaction(ByteBuffer.wrap(BlockCodec.encode(transaction))));
+			ColeChain.addBlock(block);
+			TestChain.check(ColeChain.state.current().getTip() == block, "the block is this node's tip");
+
+			TestChain.await(() -> "1".equals(status.get("height")), 10_000, "the block reached the other node");
+			TestChain.check(peer.waitFor() == 0, "the other node exited cleanly");
+			reader.join(5_000);
+
+			TestChain.check(block.hash.equals(last.get("tip")), "the other node ends on the block");
+			TestChain.check(ColeChain.state.current().getUTXOCommitment().equals(last.get("utxoCommitment")),
+							"both nodes have the same unspent outputs");
+		}
+		finally
+		{
+			peer.destroy();
+			network.stop();
+			mempool.shutdown();
+		}
+
+		System.out.println("PeerPropagationTest passed");
+		System.exit(0);
+	}
+
+	// Reads the other node's log, keeping the fields of its status lines.
+	private static void follow(Process peer, ConcurrentHashMap<String, String> status, ConcurrentHashMap<String, String> last)
+	{
+		try(BufferedReader in = new BufferedReader(new InputStreamReader(peer.getInputStream())))
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				ConcurrentHashMap<String, String> fields = line.contains(" node.status ") ? status
+														 : line.contains(" node.final ") ? last : null;
+				if(fields == null) continue;
+
+				Matcher matcher = FIELD.matcher(line);
+				while(matcher.find()) fields.put(matcher.group(1), matcher.group(2));
+			}
+		}
+		catch(IOException e)
+		{
+			// The process is gone, and the checks waiting on its output will say so.
+		}
+	}
+}
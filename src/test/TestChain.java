@@ -0,0 +1,81 @@
+import java.security.Security;
+import java.util.function.BooleanSupplier;
+
+/*
+ * 18 October 2026
+ * TestChain.java
+ *
+ * What the tests share: a fresh chain to run against, checks that
+ * fail loudly, and a way to wait on the node's own threads.
+ */
+
+final class TestChain
+{
+	private TestChain()
+	{
+	}
+
+	/**
+	 *
+	 * @return : The genesis block of a new chain, paying 100 coins to walletOne.
+	 *
+	 * Mined at difficulty 1 so the tests don't wait on proof of work.
+	 */
+	static Block create()
+	{
+		return create(1);
+	}
+
+	/**
+	 *
+	 * @param difficulty : Leading hex zeroes of the first block's target.
+	 * @return : The genesis block of a new chain, paying 100 coins to walletOne.
+	 *
+	 * The genesis transaction has its real id, as PeerNode's does, so
+	 * the block's hash can be pinned by another node. One that checks
+	 * the block has to be at the same difficulty.
+	 */
+	static Block create(int difficulty)
+	{
+		Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+		ColeChain.difficulty = difficulty;
+
+		ColeChain.walletOne = new Wallet();
+		ColeChain.walletTwo = new Wallet();
+		Wallet coinbase = new Wallet();
+
+		Transaction transaction = new Transaction(coinbase.publickey, ColeChain.walletOne.publickey, 100 * ColeChain.COIN, null);
+		transaction.generateSignature(coinbase.privatekey);
+		transaction.transactionId = transaction.calculateHash();
+		transaction.outputs.add(new TransactionOutput(transaction.recipient, transaction.value, transaction.transactionId));
+
+		ColeChain.genesisTransaction = transaction;
+		ColeChain.UTXOs.put(transaction.outputs.get(0).id, transaction.outputs.get(0));
+
+		Block genesis = new Block("0");
+		genesis.addTransaction(transaction);
+		ColeChain.addBlock(genesis);
+		ColeChain.genesisHash = genesis.hash;
+
+		check(ColeChain.state.current().size() == 1, "the genesis block is on the chain");
+		return genesis;
+	}
+
+	static void check(boolean condition, String what)
+	{
+		if(!condition) throw new AssertionError("Expected " + what);
+		System.out.println("ok: " + what);
+	}
+
+	// Waits for a condition another thread makes true, failing after timeoutMillis.
+	static void await(BooleanSupplier condition, long timeoutMillis, String what) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(!condition.getAsBoolean())
+		{
+			if(System.currentTimeMillis() > deadline) throw new AssertionError("Timed out waiting until " + what);
+			Thread.sleep(20);
+		}
+		System.out.println("ok: " + what);
+	}
+}